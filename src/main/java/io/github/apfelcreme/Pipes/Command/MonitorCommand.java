@@ -41,6 +41,10 @@ public class MonitorCommand implements SubCommand {
                     String.valueOf(PipeManager.getInstance().getMultiCache().size()),
                     String.valueOf(PipeManager.getInstance().getPipePartCache().size())
             ));
+            Pipes.sendMessage(commandSender, PipesConfig.getText(commandSender, "info.monitor.weight",
+                    String.valueOf(PipeManager.getInstance().getPipeCacheWeight()),
+                    PipesConfig.getPipeCacheWeight() > 0 ? String.valueOf(PipesConfig.getPipeCacheWeight()) : "-"
+            ));
 
             if (ItemMoveScheduler.getInstance().isActive()) {
                 Pipes.sendMessage(commandSender, PipesConfig.getText(commandSender, "info.monitor.schedulerActive",
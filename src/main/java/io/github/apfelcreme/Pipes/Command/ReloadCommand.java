@@ -1,5 +1,7 @@
 package io.github.apfelcreme.Pipes.Command;
 
+import io.github.apfelcreme.Pipes.Manager.ItemMoveScheduler;
+import io.github.apfelcreme.Pipes.Manager.PipeManager;
 import io.github.apfelcreme.Pipes.Pipes;
 import io.github.apfelcreme.Pipes.PipesConfig;
 import org.bukkit.command.CommandSender;
@@ -34,6 +36,8 @@ public class ReloadCommand implements SubCommand {
     public void execute(CommandSender commandSender, String[] strings) {
         if (commandSender.hasPermission("Pipes.reload")) {
             PipesConfig.load();
+            PipeManager.getInstance().reload();
+            ItemMoveScheduler.getInstance().reload();
             Pipes.sendMessage(commandSender, PipesConfig.getText(commandSender, "info.reload.reloaded"));
         } else {
             Pipes.sendMessage(commandSender, PipesConfig.getText(commandSender, "error.noPermission"));
@@ -0,0 +1,232 @@
+package io.github.apfelcreme.Pipes.Index;
+
+import io.github.apfelcreme.Pipes.Pipe.SimpleLocation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+
+/**
+ * A map of block locations to values. Every world has its own {@link LongObjectMap} keyed by the
+ * bit-packed block coordinates (see {@link SimpleLocation#pack(int, int, int)}) so that entries don't
+ * need key objects or world name references. The worlds themselves are looked up by name as that is what
+ * {@link SimpleLocation} and the stored pipes carry, it is only one map entry per world and not per location.
+ *
+ * @param <V> The type of the values
+ */
+public class LocationMap<V> {
+
+    private final Map<String, LongObjectMap<V>> worlds = new HashMap<>();
+
+    /**
+     * returns the map of a world
+     *
+     * @param worldName the name of the world
+     * @return the map or <code>null</code> if there are no entries in that world
+     */
+    public LongObjectMap<V> getWorld(String worldName) {
+        return worlds.get(worldName);
+    }
+
+    /**
+     * returns the value at a location
+     *
+     * @param location the location
+     * @return the value or <code>null</code> if there is none
+     */
+    public V get(SimpleLocation location) {
+        return get(location.getWorldName(), location.getX(), location.getY(), location.getZ());
+    }
+
+    /**
+     * returns the value at a location without having to create a location object
+     *
+     * @param worldName the name of the world
+     * @param x         the x coordinate
+     * @param y         the y coordinate
+     * @param z         the z coordinate
+     * @return the value or <code>null</code> if there is none
+     */
+    public V get(String worldName, int x, int y, int z) {
+        LongObjectMap<V> map = worlds.get(worldName);
+        return map != null ? map.get(SimpleLocation.pack(x, y, z)) : null;
+    }
+
+    /**
+     * returns the value at a location or a default value
+     *
+     * @param location     the location
+     * @param defaultValue the value to return if there is none
+     * @return the value or the default value
+     */
+    public V getOrDefault(SimpleLocation location, V defaultValue) {
+        V value = get(location);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * checks if there is a value at a location
+     *
+     * @param location the location
+     * @return true or false
+     */
+    public boolean containsKey(SimpleLocation location) {
+        return get(location) != null;
+    }
+
+    /**
+     * checks if there is a value at a block position
+     *
+     * @param worldName the name of the world
+     * @param x         the x coordinate
+     * @param y         the y coordinate
+     * @param z         the z coordinate
+     * @return true or false
+     */
+    public boolean containsKey(String worldName, int x, int y, int z) {
+        return get(worldName, x, y, z) != null;
+    }
+
+    /**
+     * sets the value at a location
+     *
+     * @param location the location
+     * @param value    the value, not null
+     * @return the previous value or <code>null</code> if there was none
+     */
+    public V put(SimpleLocation location, V value) {
+        return worlds.computeIfAbsent(location.getWorldName(), w -> new LongObjectMap<>()).put(location.getKey(), value);
+    }
+
+    /**
+     * sets the value at a location if there is none yet
+     *
+     * @param location the location
+     * @param value    the value, not null
+     * @return the current value or <code>null</code> if the value was added
+     */
+    public V putIfAbsent(SimpleLocation location, V value) {
+        return worlds.computeIfAbsent(location.getWorldName(), w -> new LongObjectMap<>()).putIfAbsent(location.getKey(), value);
+    }
+
+    /**
+     * returns the value at a location, creates and adds one if there is none
+     *
+     * @param location the location
+     * @param function the function to create the value with
+     * @return the current or the created value
+     */
+    public V computeIfAbsent(SimpleLocation location, Function<SimpleLocation, V> function) {
+        return worlds.computeIfAbsent(location.getWorldName(), w -> new LongObjectMap<>())
+                .computeIfAbsent(location.getKey(), key -> function.apply(location));
+    }
+
+    /**
+     * removes the value at a location
+     *
+     * @param location the location
+     * @return the removed value or <code>null</code> if there was none
+     */
+    public V remove(SimpleLocation location) {
+        LongObjectMap<V> map = worlds.get(location.getWorldName());
+        if (map == null) {
+            return null;
+        }
+        V removed = map.remove(location.getKey());
+        if (map.isEmpty()) {
+            worlds.remove(location.getWorldName());
+        }
+        return removed;
+    }
+
+    /**
+     * removes the value at a location if it is equal to the given value
+     *
+     * @param location the location
+     * @param value    the value
+     * @return true if it was removed
+     */
+    public boolean remove(SimpleLocation location, Object value) {
+        LongObjectMap<V> map = worlds.get(location.getWorldName());
+        if (map == null) {
+            return false;
+        }
+        boolean removed = map.remove(location.getKey(), value);
+        if (map.isEmpty()) {
+            worlds.remove(location.getWorldName());
+        }
+        return removed;
+    }
+
+    /**
+     * removes all values of a world
+     *
+     * @param worldName the name of the world
+     */
+    public void removeWorld(String worldName) {
+        worlds.remove(worldName);
+    }
+
+    /**
+     * returns the amount of stored locations
+     *
+     * @return the amount of stored locations
+     */
+    public int size() {
+        int size = 0;
+        for (LongObjectMap<V> map : worlds.values()) {
+            size += map.size();
+        }
+        return size;
+    }
+
+    /**
+     * checks if there are no values
+     *
+     * @return true or false
+     */
+    public boolean isEmpty() {
+        return worlds.isEmpty();
+    }
+
+    /**
+     * removes all values
+     */
+    public void clear() {
+        worlds.clear();
+    }
+
+    /**
+     * returns a copy of all values
+     *
+     * @return a list with all values
+     */
+    public List<V> values() {
+        List<V> values = new ArrayList<>();
+        for (LongObjectMap<V> map : worlds.values()) {
+            values.addAll(map.values());
+        }
+        return values;
+    }
+}
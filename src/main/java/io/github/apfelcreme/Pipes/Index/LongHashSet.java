@@ -0,0 +1,167 @@
+package io.github.apfelcreme.Pipes.Index;
+
+import java.util.Arrays;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+
+/**
+ * An open addressing hash set of primitive longs. Uses linear probing and
+ * backward shift deletion so no boxing and no entry objects are necessary.
+ */
+public class LongHashSet {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private boolean[] used;
+    private int mask;
+    private int size;
+
+    public LongHashSet() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongHashSet(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 / 4 < expectedSize) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Get the slot that a key would be stored at
+     * @param key   The key
+     * @return the index of the slot containing the key or the empty slot where it would be inserted
+     */
+    private int slot(long key) {
+        int i = mix(key) & mask;
+        while (used[i] && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * checks if the key is in this set
+     *
+     * @param key the key
+     * @return true or false
+     */
+    public boolean contains(long key) {
+        return used[slot(key)];
+    }
+
+    /**
+     * adds a key to this set
+     *
+     * @param key the key
+     * @return true if it wasn't in the set before
+     */
+    public boolean add(long key) {
+        int i = slot(key);
+        if (used[i]) {
+            return false;
+        }
+        keys[i] = key;
+        used[i] = true;
+        if (++size > (mask + 1) * 3 / 4) {
+            resize((mask + 1) << 1);
+        }
+        return true;
+    }
+
+    /**
+     * removes a key from this set
+     *
+     * @param key the key
+     * @return true if it was in the set
+     */
+    public boolean remove(long key) {
+        int i = slot(key);
+        if (!used[i]) {
+            return false;
+        }
+        size--;
+        // shift back following entries of the probe sequence so that lookups don't stop early
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (!used[j]) {
+                break;
+            }
+            int home = mix(keys[j]) & mask;
+            if ((j > i && (home <= i || home > j)) || (j < i && home <= i && home > j)) {
+                keys[i] = keys[j];
+                i = j;
+            }
+        }
+        used[i] = false;
+        return true;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        boolean[] oldUsed = used;
+        keys = new long[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                used[slot] = true;
+            }
+        }
+    }
+
+    /**
+     * returns the amount of keys
+     *
+     * @return the amount of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * checks if there are no keys
+     *
+     * @return true or false
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * removes all keys
+     */
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+}
@@ -0,0 +1,304 @@
+package io.github.apfelcreme.Pipes.Index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongFunction;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+
+/**
+ * An open addressing hash map with primitive long keys. Uses linear probing and
+ * backward shift deletion so no boxing and no entry objects are necessary.
+ * <code>null</code> values are not supported, they mark empty slots.
+ *
+ * @param <V> The type of the values
+ */
+public class LongObjectMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+
+    public LongObjectMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongObjectMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 / 4 < expectedSize) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Get the slot that a key would be stored at
+     * @param key   The key
+     * @return the index of the slot containing the key or the empty slot where it would be inserted
+     */
+    private int slot(long key) {
+        int i = mix(key) & mask;
+        while (values[i] != null && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * returns the value mapped to the key
+     *
+     * @param key the key
+     * @return the value or <code>null</code> if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        return (V) values[slot(key)];
+    }
+
+    /**
+     * returns the value mapped to the key or a default value
+     *
+     * @param key          the key
+     * @param defaultValue the value to return if there is no mapping
+     * @return the value or the default value if there is none
+     */
+    public V getOrDefault(long key, V defaultValue) {
+        V value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * checks if there is a value mapped to the key
+     *
+     * @param key the key
+     * @return true or false
+     */
+    public boolean containsKey(long key) {
+        return values[slot(key)] != null;
+    }
+
+    /**
+     * maps a value to a key
+     *
+     * @param key   the key
+     * @param value the value, not null
+     * @return the previous value or <code>null</code> if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not supported!");
+        }
+        int i = slot(key);
+        V previous = (V) values[i];
+        keys[i] = key;
+        values[i] = value;
+        if (previous == null && ++size > (mask + 1) * 3 / 4) {
+            resize((mask + 1) << 1);
+        }
+        return previous;
+    }
+
+    /**
+     * maps a value to a key if there is no value for that key yet
+     *
+     * @param key   the key
+     * @param value the value, not null
+     * @return the current value or <code>null</code> if the value was added
+     */
+    public V putIfAbsent(long key, V value) {
+        V current = get(key);
+        if (current == null) {
+            put(key, value);
+        }
+        return current;
+    }
+
+    /**
+     * returns the value mapped to the key, creates and adds one if there is none
+     *
+     * @param key      the key
+     * @param function the function to create the value with
+     * @return the current or the created value
+     */
+    public V computeIfAbsent(long key, LongFunction<V> function) {
+        V current = get(key);
+        if (current == null) {
+            current = function.apply(key);
+            if (current != null) {
+                put(key, current);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * removes the mapping of a key
+     *
+     * @param key the key
+     * @return the removed value or <code>null</code> if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int i = slot(key);
+        V previous = (V) values[i];
+        if (previous != null) {
+            removeSlot(i);
+        }
+        return previous;
+    }
+
+    /**
+     * removes the mapping of a key if it is mapped to a certain value
+     *
+     * @param key   the key
+     * @param value the value
+     * @return true if it was removed
+     */
+    public boolean remove(long key, Object value) {
+        int i = slot(key);
+        if (values[i] != null && values[i].equals(value)) {
+            removeSlot(i);
+            return true;
+        }
+        return false;
+    }
+
+    private void removeSlot(int i) {
+        size--;
+        // shift back following entries of the probe sequence so that lookups don't stop early
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (values[j] == null) {
+                break;
+            }
+            int home = mix(keys[j]) & mask;
+            if ((j > i && (home <= i || home > j)) || (j < i && home <= i && home > j)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        values[i] = null;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * returns the amount of mappings
+     *
+     * @return the amount of mappings
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * checks if there are no mappings
+     *
+     * @return true or false
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * removes all mappings
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * returns a copy of all the keys
+     *
+     * @return an array with all keys
+     */
+    public long[] keys() {
+        long[] result = new long[size];
+        int n = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                result[n++] = keys[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * returns a copy of all the values
+     *
+     * @return a list with all values
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> result = new ArrayList<>(size);
+        for (Object value : values) {
+            if (value != null) {
+                result.add((V) value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * runs an action for every mapping
+     *
+     * @param action the action
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<V> action) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                action.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    public interface Consumer<V> {
+        void accept(long key, V value);
+    }
+}
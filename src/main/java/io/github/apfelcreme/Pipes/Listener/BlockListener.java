@@ -7,17 +7,18 @@ import io.github.apfelcreme.Pipes.Exception.ChunkNotLoadedException;
 import io.github.apfelcreme.Pipes.Exception.LocationException;
 import io.github.apfelcreme.Pipes.Exception.PipeTooLongException;
 import io.github.apfelcreme.Pipes.Exception.TooManyOutputsException;
+import io.github.apfelcreme.Pipes.Manager.ItemMoveScheduler;
 import io.github.apfelcreme.Pipes.Manager.PipeManager;
 import io.github.apfelcreme.Pipes.Pipe.AbstractPipePart;
 import io.github.apfelcreme.Pipes.Pipe.ChunkLoader;
 import io.github.apfelcreme.Pipes.Pipe.Pipe;
 import io.github.apfelcreme.Pipes.Pipe.PipeInput;
 import io.github.apfelcreme.Pipes.Pipe.PipeOutput;
+import io.github.apfelcreme.Pipes.Pipe.SimpleLocation;
 import io.github.apfelcreme.Pipes.Pipes;
 import io.github.apfelcreme.Pipes.PipesConfig;
 import io.github.apfelcreme.Pipes.PipesItem;
 import io.github.apfelcreme.Pipes.PipesUtil;
-import org.bukkit.Material;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
 import org.bukkit.block.BlockState;
@@ -32,6 +33,7 @@ import org.bukkit.event.block.BlockDropItemEvent;
 import org.bukkit.event.block.BlockPistonExtendEvent;
 import org.bukkit.event.block.BlockPistonRetractEvent;
 import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.block.BlockRedstoneEvent;
 import org.bukkit.event.inventory.CraftItemEvent;
 import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.event.inventory.InventoryMoveItemEvent;
@@ -42,10 +44,9 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.logging.Level;
 
 /*
  * Copyright (C) 2016 Lord36 aka Apfelcreme
@@ -67,6 +68,13 @@ import java.util.Set;
  */
 public class BlockListener implements Listener {
 
+    /**
+     * The ticks after a piston event until the moved blocks are at their new position. Pistons turn the blocks
+     * into moving blocks for two ticks (the piston block entity's progress goes up by 0.5 per tick) and only
+     * place the real blocks in the tick after that.
+     */
+    private static final int PISTON_MOVE_TICKS = 3;
+
     private final Pipes plugin;
 
     public BlockListener(Pipes plugin) {
@@ -75,15 +83,30 @@ public class BlockListener implements Listener {
 
     @EventHandler(ignoreCancelled = true)
     public void onItemDispense(BlockDispenseEvent event) {
-        if (!(event instanceof PipeDispenseEvent) && PipesUtil.getPipesItem(event.getBlock()) != null) {
+        if (!(event instanceof PipeDispenseEvent)
+                && PipeManager.getInstance().isKnownPart(event.getBlock())
+                && PipesUtil.getPipesItem(event.getBlock()) != null) {
             event.setCancelled(true);
         }
     }
 
+    /**
+     * wakes up the blocked inputs of pipes whose outputs might not be powered anymore
+     *
+     * @param event the event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onRedstoneChange(BlockRedstoneEvent event) {
+        if (event.getOldCurrent() > 0 && event.getNewCurrent() == 0) {
+            ItemMoveScheduler.getInstance().redstoneChanged(event.getBlock());
+        }
+    }
+
     @EventHandler(ignoreCancelled = true)
     public void onItemMove(InventoryMoveItemEvent event) {
         if (event.getDestination().getType() != InventoryType.HOPPER // hoppers are allowed to remove items from the output
-                && event.getSource().getType() != InventoryType.HOPPER) {
+                && event.getSource().getType() != InventoryType.HOPPER
+                && PipeManager.getInstance().isKnownPart(event.getSource())) {
             InventoryHolder holder = event.getSource().getHolder(false);
             if (holder instanceof BlockState && PipesItem.PIPE_OUTPUT.check((BlockState) holder)) {
                 event.setCancelled(true);
@@ -95,6 +118,7 @@ public class BlockListener implements Listener {
     public void onBlockBreak(BlockBreakEvent event) {
         AbstractPipePart pipePart = PipeManager.getInstance().getPipePart(event.getBlock());
         if (pipePart != null) {
+            PipeManager.getInstance().markBlockChange(event.getBlock());
             if (new PipeBlockBreakEvent(event.getBlock(), event.getPlayer(), pipePart).callEvent()) {
                 Set<Pipe> pipes = PipeManager.getInstance().getPipesSafe(event.getBlock(), true);
                 if (!pipes.isEmpty()) {
@@ -102,15 +126,15 @@ public class BlockListener implements Listener {
                         PipeManager.getInstance().removePart(pipe, pipePart);
                     }
                 }
+                PipeManager.getInstance().forgetBlock(event.getBlock());
             } else {
                 event.setCancelled(true);
             }
         } else if (MaterialTags.STAINED_GLASS.isTagged(event.getBlock())) {
-            Set<Pipe> pipes = PipeManager.getInstance().getPipesSafe(event.getBlock(), true);
-            if (!pipes.isEmpty()) {
-                for (Pipe pipe : new ArrayList<>(pipes)) {
-                    PipeManager.getInstance().removePipe(pipe);
-                }
+            PipeManager.getInstance().markBlockChange(event.getBlock());
+            SimpleLocation location = new SimpleLocation(event.getBlock().getLocation());
+            for (Pipe pipe : new ArrayList<>(PipeManager.getInstance().getPipesSafe(location, true))) {
+                PipeManager.getInstance().removeBlock(pipe, location);
             }
         }
     }
@@ -130,6 +154,8 @@ public class BlockListener implements Listener {
 
     @EventHandler(ignoreCancelled = true)
     public void onBlockPlace(BlockPlaceEvent event) {
+        // the block might replace one that was removed without an event
+        PipeManager.getInstance().forgetBlock(event.getBlock());
         try {
             PipesItem pipesItem = PipesUtil.getPipesItem(event.getItemInHand());
             if (pipesItem != null) {
@@ -138,6 +164,7 @@ public class BlockListener implements Listener {
                     event.setCancelled(true);
                     return;
                 }
+                PipeManager.getInstance().markBlockChange(event.getBlock());
                 AbstractPipePart pipePart = PipeManager.getInstance().createPipePart(pipesItem, event.getBlock());
                 if (pipePart instanceof PipeInput) {
                     Block block = event.getBlock().getRelative(((PipeInput) pipePart).getFacing());
@@ -174,42 +201,8 @@ public class BlockListener implements Listener {
                     pipe.highlight();
                 }
             } else if (MaterialTags.STAINED_GLASS.isTagged(event.getBlock())) {
-                Material placedType = event.getBlock().getType();
-
-                Set<Pipe> found = new HashSet<>();
-                for (BlockFace face : PipesUtil.BLOCK_FACES) {
-                    Block block = event.getBlock().getRelative(face);
-                    boolean isPotentialPipe = block.getType() == placedType;
-
-                    if (!isPotentialPipe) {
-                        AbstractPipePart potentialPart = PipeManager.getInstance().getPipePart(event.getBlock());
-                        if (potentialPart != null) {
-                            if (potentialPart instanceof PipeInput) {
-                                isPotentialPipe = (((PipeInput) potentialPart).getFacing().getOppositeFace() == face);
-                            } else if (potentialPart instanceof PipeOutput) {
-                                isPotentialPipe = (((PipeOutput) potentialPart).getFacing().getOppositeFace() != face);
-                            } else {
-                                isPotentialPipe = true;
-                            }
-                        }
-                    }
-
-                    if (isPotentialPipe) {
-                        Set<Pipe> pipes = PipeManager.getInstance().getPipesSafe(block, true);
-                        if (!pipes.isEmpty()) {
-                            Pipe pipe = pipes.iterator().next();
-                            if (pipe.getType() == placedType) {
-                                found.add(pipe);
-                            }
-                        }
-                    }
-                }
-
-                if (found.size() == 1) {
-                    PipeManager.getInstance().addBlock(found.iterator().next(), event.getBlock());
-                } else if (found.size() > 1) {
-                    PipeManager.getInstance().mergePipes(found);
-                } else {
+                PipeManager.getInstance().markBlockChange(event.getBlock());
+                if (PipeManager.getInstance().connectBlock(event.getBlock()) == null) {
                     try {
                         for (Pipe pipe : PipeManager.getInstance().getPipes(event.getBlock())) {
                             Pipes.sendMessage(event.getPlayer(), PipesConfig.getText(event.getPlayer(), "info.pipe.pipeBuilt",
@@ -244,33 +237,37 @@ public class BlockListener implements Listener {
         if (!PipesConfig.isPistonCheckEnabled()) {
             return;
         }
-        
-        Set<Block> update = new LinkedHashSet<>();
-        for (Block moved : blocks) {
-            if (MaterialTags.STAINED_GLASS.isTagged(moved)) {
-                update.add(moved);
-                for (BlockFace face : PipesUtil.BLOCK_FACES) {
-                    Block u = moved.getRelative(face);
-                    if (!update.contains(u) && MaterialTags.STAINED_GLASS.isTagged(u) || PipeManager.getInstance().getPipePart(u) != null) {
-                        update.add(u);
-                    }
-                    Block ud = u.getRelative(direction);
-                    if (!update.contains(ud) && MaterialTags.STAINED_GLASS.isTagged(ud) || PipeManager.getInstance().getPipePart(ud) != null) {
-                        update.add(ud);
-                    }
+
+        List<Block> moved = new ArrayList<>();
+        for (Block block : blocks) {
+            if (MaterialTags.STAINED_GLASS.isTagged(block)) {
+                PipeManager.getInstance().markBlockChange(block);
+                SimpleLocation location = new SimpleLocation(block.getLocation());
+                for (Pipe pipe : new ArrayList<>(PipeManager.getInstance().getPipesSafe(location, true))) {
+                    PipeManager.getInstance().removeBlock(pipe, location);
                 }
+                moved.add(block.getRelative(direction));
             }
         }
-        for (Block u : update) {
-            Set<Pipe> pipes = PipeManager.getInstance().getPipesSafe(u, true);
-            if (!pipes.isEmpty()) {
-                for (Pipe pipe : new ArrayList<>(pipes)) {
-                    PipeManager.getInstance().removePipe(pipe);
+
+        if (!moved.isEmpty()) {
+            // Connect the blocks at their new position once the piston finished moving them
+            plugin.getServer().getScheduler().runTaskLater(plugin, () -> {
+                for (Block block : moved) {
+                    if (MaterialTags.STAINED_GLASS.isTagged(block)) {
+                        try {
+                            PipeManager.getInstance().connectBlock(block);
+                        } catch (LocationException e) {
+                            // the pipe was removed and its inputs will discover it again when they transfer next
+                            plugin.getLogger().log(Level.FINE, "Could not connect moved glass at " + e.getAccessedLocation()
+                                    + ": " + e.getClass().getSimpleName());
+                        }
+                    }
                 }
-            }
+            }, PISTON_MOVE_TICKS);
         }
     }
-    
+
     @EventHandler(ignoreCancelled = true)
     public void onItemCraft(CraftItemEvent event) {
         if (PipesUtil.getPipesItem(event.getCurrentItem()) == PipesItem.CHUNK_LOADER) {
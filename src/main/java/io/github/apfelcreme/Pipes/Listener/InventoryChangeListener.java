@@ -1,22 +1,32 @@
 package io.github.apfelcreme.Pipes.Listener;
 
+import com.destroystokyo.paper.MaterialTags;
 import de.themoep.inventorygui.InventoryGui;
 import io.github.apfelcreme.Pipes.Manager.PipeManager;
+import io.github.apfelcreme.Pipes.Pipe.AbstractPipePart;
 import io.github.apfelcreme.Pipes.Pipe.Pipe;
 import io.github.apfelcreme.Pipes.Pipe.PipeInput;
 import io.github.apfelcreme.Pipes.Pipe.SimpleLocation;
 import io.github.apfelcreme.Pipes.Pipes;
 import io.github.apfelcreme.Pipes.Manager.ItemMoveScheduler;
 import io.github.apfelcreme.Pipes.PipesItem;
+import org.bukkit.World;
+import org.bukkit.block.Block;
 import org.bukkit.block.BlockState;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockDispenseEvent;
+import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.event.inventory.InventoryCloseEvent;
 import org.bukkit.event.inventory.InventoryMoveItemEvent;
+import org.bukkit.event.inventory.InventoryType;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.InventoryHolder;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 /*
@@ -41,15 +51,49 @@ public class InventoryChangeListener implements Listener {
 
     private final Pipes plugin;
 
+    /**
+     * inputs whose inventory changed since the last flush, they get scheduled all at once
+     */
+    private final Set<SimpleLocation> dirtyInputs = new LinkedHashSet<>();
+
     public InventoryChangeListener(Pipes plugin) {
         this.plugin = plugin;
     }
 
     @EventHandler(priority = EventPriority.LOWEST, ignoreCancelled = true)
     public void onInventoryItemMove(final InventoryMoveItemEvent event) {
-        if (!handleInventoryAction(event.getDestination(), true)) {
+        // items taken out of a target make room for pipes that were blocked by it
+        ItemMoveScheduler.getInstance().targetChanged(event.getSource());
+        // most moves on a server have nothing to do with pipes, reject them before reading any block data
+        if (PipeManager.getInstance().isKnownPart(event.getDestination()) && !handleInventoryAction(event.getDestination(), true)) {
             event.setCancelled(true);
         }
+        if (event.getSource().getType() == InventoryType.DROPPER && PipeManager.getInstance().isKnownPart(event.getSource())) {
+            // items taken out of an output change its filter
+            handleInventoryAction(event.getSource(), true);
+        }
+    }
+
+    /**
+     * gets fired when a dispenser or dropper drops or uses an item, this doesn't fire an item move event
+     *
+     * @param event the event
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onItemDispense(BlockDispenseEvent event) {
+        // an emptied dropper or dispenser might have room for items that didn't fit before
+        Block block = event.getBlock();
+        ItemMoveScheduler.getInstance().targetChanged(block.getWorld().getName(), block.getX(), block.getY(), block.getZ());
+    }
+
+    /**
+     * gets fired on every inventory click
+     *
+     * @param event the event
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInventoryClick(InventoryClickEvent event) {
+        ItemMoveScheduler.getInstance().targetChanged(event.getInventory());
     }
 
     /**
@@ -59,6 +103,7 @@ public class InventoryChangeListener implements Listener {
      */
     @EventHandler(priority = EventPriority.LOWEST)
     public void onInventoryClose(InventoryCloseEvent event) {
+        ItemMoveScheduler.getInstance().targetChanged(event.getInventory());
         handleInventoryAction(event.getInventory(), false);
     }
 
@@ -78,23 +123,62 @@ public class InventoryChangeListener implements Listener {
             return true;
         }
         BlockState dispenser = (BlockState) holder;
+        if (dispenser.getType() == PipesItem.PIPE_OUTPUT.getMaterial()) {
+            PipeManager.getInstance().invalidateFilter(new SimpleLocation(dispenser.getLocation()));
+            return true;
+        }
         if (!PipesItem.PIPE_INPUT.check(dispenser)) {
             return true;
         }
         SimpleLocation dispenserLocation = new SimpleLocation(dispenser.getLocation());
 
-        Set<Pipe> pipes = PipeManager.getInstance().getPipesSafe(dispenserLocation);
+        // only look at cached data here, unknown pipes are searched for when the transfer runs
+        Set<Pipe> pipes = PipeManager.getInstance().getPipesSafe(dispenserLocation, true);
         if (pipes.isEmpty()) {
-            return false;
+            if (!mightBePipe(dispenser)) {
+                return false;
+            }
+        } else if (pipes.iterator().next().getInput(dispenserLocation) == null) {
+            return true;
         }
-        PipeInput pipeInput = pipes.iterator().next().getInput(dispenserLocation);
-        if (pipeInput != null) {
-            if (scheduled) {
-                plugin.getServer().getScheduler().runTaskLater(plugin, () -> ItemMoveScheduler.getInstance().add(dispenserLocation), 2);
-            } else {
-                ItemMoveScheduler.getInstance().add(dispenserLocation);
+
+        if (scheduled) {
+            if (dirtyInputs.isEmpty()) {
+                plugin.getServer().getScheduler().runTaskLater(plugin, this::flushDirtyInputs, 2);
             }
+            dirtyInputs.add(dispenserLocation);
+        } else {
+            ItemMoveScheduler.getInstance().add(dispenserLocation);
         }
         return true;
     }
+
+    /**
+     * Check whether or not an input that isn't part of a cached pipe could be part of one
+     * @param dispenser The input's block
+     * @return <code>true</code> if the input points into glass or into an unloaded chunk; <code>false</code> if it can't be part of a pipe
+     */
+    private boolean mightBePipe(BlockState dispenser) {
+        AbstractPipePart part = PipeManager.getInstance().getPipePart(dispenser);
+        if (!(part instanceof PipeInput)) {
+            return false;
+        }
+        SimpleLocation target = ((PipeInput) part).getTargetLocation();
+        World world = dispenser.getWorld();
+        if (!world.isChunkLoaded(target.getX() >> 4, target.getZ() >> 4)) {
+            return true;
+        }
+        return MaterialTags.STAINED_GLASS.isTagged(world.getBlockAt(target.getX(), target.getY(), target.getZ()).getType());
+    }
+
+    /**
+     * Schedule the transfers of all inputs that changed since the last flush
+     */
+    private void flushDirtyInputs() {
+        List<SimpleLocation> inputs = new ArrayList<>(dirtyInputs);
+        dirtyInputs.clear();
+        for (SimpleLocation location : inputs) {
+            ItemMoveScheduler.getInstance().add(location);
+        }
+    }
 }
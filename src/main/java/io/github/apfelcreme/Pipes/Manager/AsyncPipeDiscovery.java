@@ -0,0 +1,309 @@
+package io.github.apfelcreme.Pipes.Manager;
+
+import com.destroystokyo.paper.MaterialTags;
+import io.github.apfelcreme.Pipes.Index.LongObjectMap;
+import io.github.apfelcreme.Pipes.Pipe.AbstractPipePart;
+import io.github.apfelcreme.Pipes.Pipe.ChunkLoader;
+import io.github.apfelcreme.Pipes.Pipe.Pipe;
+import io.github.apfelcreme.Pipes.Pipe.PipeInput;
+import io.github.apfelcreme.Pipes.Pipe.PipeOutput;
+import io.github.apfelcreme.Pipes.Pipe.SimpleLocation;
+import io.github.apfelcreme.Pipes.Pipes;
+import io.github.apfelcreme.Pipes.PipesConfig;
+import io.github.apfelcreme.Pipes.PipesItem;
+import io.github.apfelcreme.Pipes.PipesUtil;
+import org.bukkit.Bukkit;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+
+import java.util.ArrayDeque;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+
+/**
+ * Searches for the pipe of an input in chunk snapshots off the main thread. Only the glass blocks are walked
+ * asynchronously, the parts that were found next to them are read on the main thread afterwards as their
+ * data isn't part of a snapshot. Whenever the walk reaches a chunk that has no snapshot yet it hands back
+ * to the main thread which takes the snapshot and continues the walk. If that chunk isn't loaded or pipe
+ * blocks changed too often while searching it falls back to {@link PipeManager#isPipe(Block)}.
+ */
+class AsyncPipeDiscovery {
+
+    private static final int MAX_RESTARTS = 3;
+
+    private static final Set<Material> PART_MATERIALS = EnumSet.of(
+            PipesItem.PIPE_INPUT.getMaterial(),
+            PipesItem.PIPE_OUTPUT.getMaterial(),
+            PipesItem.CHUNK_LOADER.getMaterial()
+    );
+
+    private final PipeManager manager;
+
+    /**
+     * the inputs whose pipe is currently searched, their transfers are held until the search is done
+     */
+    private final Set<SimpleLocation> pending = new HashSet<>();
+
+    AsyncPipeDiscovery(PipeManager manager) {
+        this.manager = manager;
+    }
+
+    /**
+     * Start searching for the pipe of an input if it isn't already searched. The input gets
+     * scheduled for a transfer again once its pipe was found.
+     *
+     * @param input the location of the input
+     */
+    void discover(SimpleLocation input) {
+        if (pending.add(input)) {
+            start(input, 0);
+        }
+    }
+
+    private void start(SimpleLocation input, int restarts) {
+        World world = Bukkit.getWorld(input.getWorldName());
+        if (world == null) {
+            pending.remove(input);
+            return;
+        }
+        AbstractPipePart part = manager.getPipePart(input.getBlock());
+        if (!(part instanceof PipeInput)) {
+            pending.remove(input);
+            return;
+        }
+        SimpleLocation target = ((PipeInput) part).getTargetLocation();
+        Material type = target.getBlock().getType();
+        if (!MaterialTags.STAINED_GLASS.isTagged(type)) {
+            pending.remove(input);
+            return;
+        }
+
+        // only snapshot the chunk the pipe starts in, the walk asks for the other chunks when it reaches them
+        Walk walk = new Walk(world, type, target, restarts);
+        if (world.isChunkLoaded(target.getX() >> 4, target.getZ() >> 4)) {
+            walk.snapshots.put(target.getChunkKey(), world.getChunkAt(target.getX() >> 4, target.getZ() >> 4).getChunkSnapshot(false, false, false));
+        }
+        continueWalk(input, walk);
+    }
+
+    private void continueWalk(SimpleLocation input, Walk walk) {
+        if (!Pipes.getInstance().isEnabled()) {
+            return;
+        }
+        Bukkit.getScheduler().runTaskAsynchronously(Pipes.getInstance(), () -> {
+            walk.run();
+            if (Pipes.getInstance().isEnabled()) {
+                Bukkit.getScheduler().runTask(Pipes.getInstance(), () -> afterWalk(input, walk));
+            }
+        });
+    }
+
+    private void afterWalk(SimpleLocation input, Walk walk) {
+        if (walk.blockChanges != manager.getBlockChanges()) {
+            // pipe blocks changed while searching, the snapshots are outdated
+            if (walk.restarts < MAX_RESTARTS) {
+                start(input, walk.restarts + 1);
+            } else {
+                discoverSync(input);
+            }
+            return;
+        }
+
+        if (walk.missing != null) {
+            int chunkX = walk.missing.getX() >> 4;
+            int chunkZ = walk.missing.getZ() >> 4;
+            if (walk.world.isChunkLoaded(chunkX, chunkZ)) {
+                walk.snapshots.put(walk.missing.getChunkKey(), walk.world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(false, false, false));
+                continueWalk(input, walk);
+            } else {
+                // chunk loaders might allow the pipe to reach into that chunk, let the normal search handle it
+                discoverSync(input);
+            }
+            return;
+        }
+
+        pending.remove(input);
+        if (walk.tooLong != null) {
+            // the transfer will be scheduled again once one of the found blocks changes
+            Set<SimpleLocation> footprint = new HashSet<>(walk.pipeBlocks);
+            footprint.add(walk.tooLong);
+            manager.addInvalidInput(input, DiscoveryResult.tooLong(walk.tooLong, footprint));
+            return;
+        }
+        finish(input, walk);
+    }
+
+    /**
+     * Read the parts next to the found glass blocks and register the pipe
+     */
+    private void finish(SimpleLocation input, Walk walk) {
+        if (manager.getPipeCache().getIfPresent(input) != null) {
+            // found by a different input of the same pipe in the meantime
+            ItemMoveScheduler.getInstance().add(input);
+            return;
+        }
+
+        LinkedHashMap<SimpleLocation, PipeInput> inputs = new LinkedHashMap<>();
+        LinkedHashMap<SimpleLocation, PipeOutput> outputs = new LinkedHashMap<>();
+        LinkedHashMap<SimpleLocation, ChunkLoader> chunkLoaders = new LinkedHashMap<>();
+        // collect the targets of all outputs first so that skipping them doesn't depend on the order of the parts
+        LinkedHashMap<SimpleLocation, AbstractPipePart> parts = new LinkedHashMap<>();
+        Set<SimpleLocation> outputTargets = new HashSet<>();
+        for (SimpleLocation location : walk.candidates) {
+            AbstractPipePart part = manager.getPipePart(walk.world.getBlockAt(location.getX(), location.getY(), location.getZ()));
+            if (part != null) {
+                parts.put(location, part);
+                if (part instanceof PipeOutput) {
+                    outputTargets.add(((PipeOutput) part).getTargetLocation());
+                }
+            }
+        }
+
+        for (Map.Entry<SimpleLocation, AbstractPipePart> entry : parts.entrySet()) {
+            SimpleLocation location = entry.getKey();
+            if (outputTargets.contains(location)) {
+                continue;
+            }
+            AbstractPipePart part = entry.getValue();
+            if (part instanceof PipeInput) {
+                if (walk.pipeBlocks.contains(((PipeInput) part).getTargetLocation())) {
+                    inputs.put(part.getLocation(), (PipeInput) part);
+                }
+            } else if (part instanceof PipeOutput) {
+                if (PipesConfig.getMaxPipeOutputs() > 0 && outputs.size() >= PipesConfig.getMaxPipeOutputs()) {
+                    Set<SimpleLocation> footprint = new HashSet<>(walk.pipeBlocks);
+                    footprint.addAll(outputs.keySet());
+                    footprint.add(location);
+                    manager.addInvalidInput(input, DiscoveryResult.tooManyOutputs(location, footprint));
+                    return;
+                }
+                outputs.put(part.getLocation(), (PipeOutput) part);
+            } else if (part instanceof ChunkLoader) {
+                chunkLoaders.put(part.getLocation(), (ChunkLoader) part);
+            }
+        }
+
+        // Remove outputs that point in our own inputs
+        for (Iterator<PipeOutput> it = outputs.values().iterator(); it.hasNext();) {
+            if (inputs.containsKey(it.next().getTargetLocation())) {
+                it.remove();
+            }
+        }
+
+        if (inputs.containsKey(input) && !outputs.isEmpty() && !walk.pipeBlocks.isEmpty()) {
+            manager.addPipe(new Pipe(inputs, outputs, chunkLoaders, walk.pipeBlocks, walk.type));
+            ItemMoveScheduler.getInstance().add(input);
+        }
+    }
+
+    /**
+     * Search for the pipe on the main thread
+     */
+    private void discoverSync(SimpleLocation input) {
+        pending.remove(input);
+        DiscoveryResult result = manager.discoverByInput(input);
+        if (result.getPipe() != null) {
+            ItemMoveScheduler.getInstance().add(input);
+        } else if (result.getStatus() == DiscoveryResult.Status.CHUNK_NOT_LOADED) {
+            ItemMoveScheduler.getInstance().park(input, result.getLocation());
+        }
+        // invalid pipes get scheduled again once one of the blocks that were looked at changes
+    }
+
+    /**
+     * The state of a search. It is only ever accessed by one thread at a time.
+     */
+    private class Walk {
+        private final World world;
+        private final Material type;
+        private final int restarts;
+        private final int blockChanges;
+        private final int minHeight;
+        private final int maxHeight;
+        private final int maxLength;
+
+        private final LongObjectMap<ChunkSnapshot> snapshots = new LongObjectMap<>();
+        private final Queue<SimpleLocation> queue = new ArrayDeque<>();
+        private final Set<SimpleLocation> visited = new HashSet<>();
+        private final LinkedHashSet<SimpleLocation> pipeBlocks = new LinkedHashSet<>();
+        private final LinkedHashSet<SimpleLocation> candidates = new LinkedHashSet<>();
+
+        private SimpleLocation missing = null;
+        private SimpleLocation tooLong = null;
+
+        private Walk(World world, Material type, SimpleLocation start, int restarts) {
+            this.world = world;
+            this.type = type;
+            this.restarts = restarts;
+            this.blockChanges = manager.getBlockChanges();
+            this.minHeight = world.getMinHeight();
+            this.maxHeight = world.getMaxHeight();
+            this.maxLength = PipesConfig.getMaxPipeLength();
+            queue.add(start);
+        }
+
+        /**
+         * Walk through the glass blocks until everything was found or a chunk without a snapshot is reached
+         */
+        private void run() {
+            missing = null;
+            while (!queue.isEmpty()) {
+                SimpleLocation location = queue.peek();
+                if (location.getY() < minHeight || location.getY() >= maxHeight) {
+                    queue.remove();
+                    continue;
+                }
+                ChunkSnapshot snapshot = snapshots.get(location.getChunkKey());
+                if (snapshot == null) {
+                    missing = location;
+                    return;
+                }
+                queue.remove();
+                if (!visited.add(location)) {
+                    continue;
+                }
+                Material material = snapshot.getBlockType(location.getX() & 15, location.getY(), location.getZ() & 15);
+                if (material == type) {
+                    if (maxLength > 0 && pipeBlocks.size() >= maxLength) {
+                        tooLong = location;
+                        return;
+                    }
+                    pipeBlocks.add(location);
+                    for (BlockFace face : PipesUtil.BLOCK_FACES) {
+                        queue.add(location.getRelative(face));
+                    }
+                } else if (PART_MATERIALS.contains(material)) {
+                    candidates.add(location);
+                }
+            }
+        }
+    }
+}
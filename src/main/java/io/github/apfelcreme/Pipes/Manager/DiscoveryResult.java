@@ -0,0 +1,170 @@
+package io.github.apfelcreme.Pipes.Manager;
+
+import io.github.apfelcreme.Pipes.Exception.ChunkNotLoadedException;
+import io.github.apfelcreme.Pipes.Exception.PipeTooLongException;
+import io.github.apfelcreme.Pipes.Exception.TooManyOutputsException;
+import io.github.apfelcreme.Pipes.Pipe.Pipe;
+import io.github.apfelcreme.Pipes.Pipe.SimpleLocation;
+
+import java.util.Collections;
+import java.util.Set;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+
+/**
+ * The result of searching for a pipe. Instead of throwing an exception an invalid pipe is reported with the
+ * reason why it is invalid and the locations that were looked at before the search stopped.
+ */
+public class DiscoveryResult {
+
+    /**
+     * a search that didn't find any pipe
+     */
+    public static final DiscoveryResult NONE = new DiscoveryResult(Status.NONE, null, null, Collections.emptySet());
+
+    private final Status status;
+    private final Pipe pipe;
+    private final SimpleLocation location;
+    private final Set<SimpleLocation> footprint;
+
+    private DiscoveryResult(Status status, Pipe pipe, SimpleLocation location, Set<SimpleLocation> footprint) {
+        this.status = status;
+        this.pipe = pipe;
+        this.location = location;
+        this.footprint = footprint;
+    }
+
+    /**
+     * Create the result of a search that found a valid pipe
+     *
+     * @param pipe the pipe
+     * @return the result
+     */
+    public static DiscoveryResult found(Pipe pipe) {
+        return new DiscoveryResult(Status.FOUND, pipe, null, Collections.emptySet());
+    }
+
+    /**
+     * Create the result of a search that reached into a chunk that isn't loaded
+     *
+     * @param location a location in the chunk that isn't loaded
+     * @return the result
+     */
+    public static DiscoveryResult chunkNotLoaded(SimpleLocation location) {
+        return new DiscoveryResult(Status.CHUNK_NOT_LOADED, null, location, Collections.emptySet());
+    }
+
+    /**
+     * Create the result of a search that found a pipe with more blocks than allowed
+     *
+     * @param location  the location of the glass block that was one too many
+     * @param footprint the locations that were looked at, removing any other block can't make the pipe valid
+     * @return the result
+     */
+    public static DiscoveryResult tooLong(SimpleLocation location, Set<SimpleLocation> footprint) {
+        return new DiscoveryResult(Status.TOO_LONG, null, location, footprint);
+    }
+
+    /**
+     * Create the result of a search that found a pipe with more outputs than allowed
+     *
+     * @param location  the location of the output that was one too many
+     * @param footprint the locations that were looked at, removing any other block can't make the pipe valid
+     * @return the result
+     */
+    public static DiscoveryResult tooManyOutputs(SimpleLocation location, Set<SimpleLocation> footprint) {
+        return new DiscoveryResult(Status.TOO_MANY_OUTPUTS, null, location, footprint);
+    }
+
+    /**
+     * returns the status of the search
+     *
+     * @return the status
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * returns the found pipe
+     *
+     * @return the pipe or <code>null</code> if no valid pipe was found
+     */
+    public Pipe getPipe() {
+        return pipe;
+    }
+
+    /**
+     * returns the location at which the search stopped
+     *
+     * @return the location or <code>null</code> if the search didn't fail
+     */
+    public SimpleLocation getLocation() {
+        return location;
+    }
+
+    /**
+     * returns the locations that the result depends on. Only invalid pipes have a footprint,
+     * their result stays the same until a block at one of these locations changes.
+     *
+     * @return the footprint, empty if the result doesn't depend on specific blocks
+     */
+    public Set<SimpleLocation> getFootprint() {
+        return footprint;
+    }
+
+    /**
+     * Check whether or not the search found a pipe that can't be used because of the configured limits
+     *
+     * @return <code>true</code> if the pipe is too long or has too many outputs; <code>false</code> if not
+     */
+    public boolean isInvalid() {
+        return status == Status.TOO_LONG || status == Status.TOO_MANY_OUTPUTS;
+    }
+
+    /**
+     * returns the found pipe or throws the exception that matches the reason why no valid pipe was found
+     *
+     * @return the pipe or <code>null</code> if there was no pipe
+     * @throws ChunkNotLoadedException When the pipe reaches into a chunk that is not loaded
+     * @throws PipeTooLongException When the pipe is too long
+     * @throws TooManyOutputsException when the pipe has too many outputs
+     */
+    public Pipe getPipeOrThrow() throws ChunkNotLoadedException, PipeTooLongException, TooManyOutputsException {
+        switch (status) {
+            case CHUNK_NOT_LOADED:
+                throw new ChunkNotLoadedException(location);
+            case TOO_LONG:
+                throw new PipeTooLongException(location);
+            case TOO_MANY_OUTPUTS:
+                throw new TooManyOutputsException(location);
+            default:
+                return pipe;
+        }
+    }
+
+    public enum Status {
+        FOUND,
+        NONE,
+        CHUNK_NOT_LOADED,
+        TOO_LONG,
+        TOO_MANY_OUTPUTS
+    }
+}
@@ -0,0 +1,179 @@
+package io.github.apfelcreme.Pipes.Manager;
+
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+
+/**
+ * A local copy of the storage slots of an inventory that items are moved in and out of during one transfer.
+ * The contents are read once and only written back to the inventory with {@link #flush()} if they changed.
+ * While a buffer exists all reads and writes of its inventory need to go through the buffer. Code that can't,
+ * like the listeners of other plugins, needs to be called after a flush and followed by {@link #isCurrent()}.
+ */
+class InventoryBuffer {
+
+    private final Inventory inventory;
+    private final ItemStack[] contents;
+    private final int[] amounts;
+    private final int maxStackSize;
+    private boolean changed = false;
+    private boolean discarded = false;
+
+    InventoryBuffer(Inventory inventory) {
+        this.inventory = inventory;
+        this.contents = inventory.getStorageContents();
+        this.amounts = new int[contents.length];
+        for (int i = 0; i < contents.length; i++) {
+            amounts[i] = contents[i] != null ? contents[i].getAmount() : 0;
+        }
+        this.maxStackSize = inventory.getMaxStackSize();
+    }
+
+    /**
+     * Check whether or not items can be added to an inventory through a buffer. Only plain containers
+     * without special slots are supported, everything else needs to use the inventory's own methods.
+     *
+     * @param inventory the inventory
+     * @return <code>true</code> if the inventory can be buffered; <code>false</code> if not
+     */
+    static boolean supports(Inventory inventory) {
+        if (inventory.getLocation() == null) {
+            return false;
+        }
+        switch (inventory.getType()) {
+            case CHEST:
+            case BARREL:
+            case SHULKER_BOX:
+            case DISPENSER:
+            case DROPPER:
+            case HOPPER:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * returns the buffered inventory
+     *
+     * @return the inventory
+     */
+    Inventory getInventory() {
+        return inventory;
+    }
+
+    /**
+     * returns the buffered storage contents, changes to the amounts of the stacks are written back on flush
+     *
+     * @return the contents, empty slots are <code>null</code>
+     */
+    ItemStack[] getContents() {
+        return contents;
+    }
+
+    /**
+     * Add an item to the buffer. Similar stacks get filled up first, then empty slots are used.
+     * The amount of the given stack is set to the amount that didn't fit.
+     *
+     * @param itemStack the item stack
+     */
+    void addItem(ItemStack itemStack) {
+        int maxAmount = Math.min(itemStack.getMaxStackSize(), maxStackSize);
+        for (int i = 0; i < contents.length && itemStack.getAmount() > 0; i++) {
+            ItemStack item = contents[i];
+            if (item != null && item != itemStack && item.getAmount() > 0 && item.getAmount() < maxAmount && item.isSimilar(itemStack)) {
+                int moved = Math.min(maxAmount - item.getAmount(), itemStack.getAmount());
+                item.setAmount(item.getAmount() + moved);
+                itemStack.setAmount(itemStack.getAmount() - moved);
+            }
+        }
+        for (int i = 0; i < contents.length && itemStack.getAmount() > 0; i++) {
+            if (contents[i] == null || contents[i].getAmount() <= 0) {
+                int moved = Math.min(maxAmount, itemStack.getAmount());
+                ItemStack item = new ItemStack(itemStack);
+                item.setAmount(moved);
+                contents[i] = item;
+                itemStack.setAmount(itemStack.getAmount() - moved);
+                changed = true;
+            }
+        }
+    }
+
+    /**
+     * Check whether or not the inventory still has the contents that were last read or flushed by this buffer.
+     * This only works directly after the buffer was read or flushed, before its contents were changed again.
+     *
+     * @return <code>true</code> if nothing else changed the inventory; <code>false</code> if it did
+     */
+    boolean isCurrent() {
+        ItemStack[] current = inventory.getStorageContents();
+        if (current.length != contents.length) {
+            return false;
+        }
+        for (int i = 0; i < current.length; i++) {
+            int amount = current[i] != null ? current[i].getAmount() : 0;
+            if (amount != amounts[i] || (amount > 0 && !current[i].isSimilar(contents[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Discard the buffer, its contents won't be written to the inventory anymore
+     */
+    void discard() {
+        discarded = true;
+    }
+
+    /**
+     * returns whether or not the buffer was discarded
+     *
+     * @return <code>true</code> if it was discarded
+     */
+    boolean isDiscarded() {
+        return discarded;
+    }
+
+    /**
+     * Write the contents back to the inventory if anything changed since they were read or last flushed
+     */
+    void flush() {
+        if (discarded) {
+            return;
+        }
+        for (int i = 0; i < contents.length; i++) {
+            int amount = contents[i] != null ? contents[i].getAmount() : 0;
+            if (amount <= 0) {
+                contents[i] = null;
+                amount = 0;
+            }
+            if (amount != amounts[i]) {
+                amounts[i] = amount;
+                changed = true;
+            }
+        }
+        if (changed) {
+            inventory.setStorageContents(contents);
+            changed = false;
+        }
+    }
+}
@@ -3,13 +3,14 @@ package io.github.apfelcreme.Pipes.Manager;
 import co.aikar.timings.lib.MCTiming;
 import io.github.apfelcreme.Pipes.Event.PipeDispenseEvent;
 import io.github.apfelcreme.Pipes.Event.PipeMoveItemEvent;
-import io.github.apfelcreme.Pipes.Exception.ChunkNotLoadedException;
-import io.github.apfelcreme.Pipes.Exception.PipeTooLongException;
-import io.github.apfelcreme.Pipes.Exception.TooManyOutputsException;
+import io.github.apfelcreme.Pipes.Index.LocationMap;
+import io.github.apfelcreme.Pipes.Index.LongHashSet;
+import io.github.apfelcreme.Pipes.Index.LongObjectMap;
 import io.github.apfelcreme.Pipes.LoopDetection.Detection;
 import io.github.apfelcreme.Pipes.Pipe.Pipe;
 import io.github.apfelcreme.Pipes.Pipe.PipeInput;
 import io.github.apfelcreme.Pipes.Pipe.PipeOutput;
+import io.github.apfelcreme.Pipes.Pipe.Route;
 import io.github.apfelcreme.Pipes.Pipe.SimpleLocation;
 import io.github.apfelcreme.Pipes.Pipes;
 import io.github.apfelcreme.Pipes.PipesConfig;
@@ -19,24 +20,30 @@ import org.bukkit.Effect;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.Tag;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
 import org.bukkit.block.Container;
 import org.bukkit.block.data.Levelled;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Item;
+import org.bukkit.event.Event;
+import org.bukkit.event.inventory.InventoryType;
 import org.bukkit.inventory.BrewerInventory;
+import org.bukkit.inventory.DoubleChestInventory;
 import org.bukkit.inventory.FurnaceInventory;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.InventoryHolder;
 import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.RegisteredListener;
 import org.bukkit.util.Vector;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -84,6 +91,54 @@ public class ItemMoveScheduler {
      */
     private Set<SimpleLocation> addItemTransfers;
 
+    /**
+     * transfers that wait for a chunk to load, by world name and chunk key
+     */
+    private final Map<String, LongObjectMap<Set<SimpleLocation>>> parkedItemTransfers = new HashMap<>();
+
+    /**
+     * the backoff state of inputs that couldn't move anything, by input location
+     */
+    private final LocationMap<Backoff> backoffs = new LocationMap<>();
+
+    /**
+     * the blocked inputs by the locations of outputs and output targets whose change should wake them up
+     */
+    private final LocationMap<Set<SimpleLocation>> blockedByWatched = new LocationMap<>();
+
+    /**
+     * the tick until which the transfers of inputs whose pipe used up its throughput are skipped
+     */
+    private final LocationMap<Integer> throttledTransfers = new LocationMap<>();
+
+    /**
+     * the items that didn't fit into a target at all by target location, mapped to the tick it was noticed
+     */
+    private final LocationMap<Map<ItemStack, Integer>> saturatedTargets = new LocationMap<>();
+
+    /**
+     * packed locations of the blocks in the blocked inputs' watched locations or the saturated targets, by world name.
+     * Changes of blocks that aren't in here are ignored without any further lookups. Entries that aren't
+     * watched anymore are removed once a change of their block is noticed.
+     */
+    private final Map<String, LongHashSet> watchedKeys = new HashMap<>();
+
+    /**
+     * the amount of ticks after which a saturated target is checked again even if no change was noticed
+     */
+    private static final int SATURATION_TIMEOUT = 20 * 60;
+
+    /**
+     * the amount of ticks after which an unchanged blocked input is fully checked again
+     */
+    private static final int FINGERPRINT_TIMEOUT = 20 * 60;
+
+    /**
+     * the distance in blocks from a redstone component in which an output might be powered by it. A component powers
+     * the block it points into, which powers the output next to it, and droppers are also powered through the block above.
+     */
+    private static final int REDSTONE_REACH = 3;
+
     /**
      * whether or not the scheduler is currently transferring
      */
@@ -94,6 +149,17 @@ public class ItemMoveScheduler {
      */
     private int emptyRuns;
 
+    /**
+     * the transfers of the current budgeted round that still need to be run, in the order they were scheduled
+     * when the round started. Transfers that were added or re-added to the queue after that wait for the next round.
+     */
+    private final ArrayDeque<SimpleLocation> roundRemaining = new ArrayDeque<>();
+
+    /**
+     * the number of ticks since the current budgeted round was started
+     */
+    private long roundTicks;
+
     /**
      * the scheduler instance
      */
@@ -127,19 +193,117 @@ public class ItemMoveScheduler {
      * starts a task
      */
     private void create() {
-        taskId = Pipes.getInstance().getServer().getScheduler().scheduleSyncRepeatingTask(Pipes.getInstance(), () -> {
-            if (!scheduledItemTransfers.isEmpty()) {
-                isTransferring = true;
-                scheduledItemTransfers.removeIf(this::execute);
-                isTransferring = false;
-                addQueued();
-            } else {
+        if (PipesConfig.getTransferBudget() > 0) {
+            // budgeted rounds need to be able to continue on the next tick
+            roundTicks = PipesConfig.getTransferCooldown();
+            taskId = Pipes.getInstance().getServer().getScheduler().scheduleSyncRepeatingTask(Pipes.getInstance(),
+                    this::runBudgeted, 20L, 1L);
+        } else {
+            taskId = Pipes.getInstance().getServer().getScheduler().scheduleSyncRepeatingTask(Pipes.getInstance(),
+                    this::run, 20L, PipesConfig.getTransferCooldown());
+        }
+    }
+
+    /**
+     * restarts the task with the current settings if it is running
+     */
+    public void reload() {
+        if (isActive()) {
+            Pipes.getInstance().getServer().getScheduler().cancelTask(taskId);
+            roundRemaining.clear();
+            create();
+        }
+    }
+
+    /**
+     * runs all scheduled transfers at once
+     */
+    private void run() {
+        if (!scheduledItemTransfers.isEmpty()) {
+            isTransferring = true;
+            scheduledItemTransfers.removeIf(this::executeWithBackoff);
+            isTransferring = false;
+            addQueued();
+        } else {
+            emptyRuns++;
+            if (emptyRuns >= 3) {
+                kill();
+            }
+        }
+    }
+
+    /**
+     * runs the scheduled transfers within the configured time budget. A new round over all transfers
+     * starts every transferCooldown ticks, if the budget is used up the round continues on the next tick
+     * with the input that was next in line. Unfinished transfers are moved to the end of the queue.
+     */
+    private void runBudgeted() {
+        roundTicks++;
+        if (roundRemaining.isEmpty()) {
+            if (roundTicks < PipesConfig.getTransferCooldown()) {
+                return;
+            }
+            roundTicks = 0;
+            if (scheduledItemTransfers.isEmpty()) {
                 emptyRuns++;
                 if (emptyRuns >= 3) {
                     kill();
                 }
+                return;
+            }
+            roundRemaining.addAll(scheduledItemTransfers);
+        }
+
+        long deadline = System.nanoTime() + PipesConfig.getTransferBudget();
+        List<SimpleLocation> unfinished = new ArrayList<>();
+        isTransferring = true;
+        while (!roundRemaining.isEmpty()) {
+            SimpleLocation location = roundRemaining.poll();
+            if (!scheduledItemTransfers.remove(location)) {
+                // the transfer was removed from the queue since the round started
+                continue;
+            }
+            if (!executeWithBackoff(location)) {
+                unfinished.add(location);
+            }
+            if (System.nanoTime() >= deadline) {
+                break;
+            }
+        }
+        isTransferring = false;
+        scheduledItemTransfers.addAll(unfinished);
+        addQueued();
+    }
+
+    /**
+     * executes the item transfer unless the input is waiting because it was blocked before.
+     * Inputs that couldn't move anything wait twice as many cycles as the last time, up to the configured ceiling.
+     * When they are checked again the transfer is skipped if neither their contents nor their pipe changed.
+     *
+     * @param simpleLocation the location of the PipeInput
+     * @return <code>true</code> if this transfer should be considered as completed and removed from the queue
+     */
+    private boolean executeWithBackoff(SimpleLocation simpleLocation) {
+        Integer throttledUntil = throttledTransfers.get(simpleLocation);
+        if (throttledUntil != null) {
+            if (Bukkit.getCurrentTick() < throttledUntil) {
+                return false;
             }
-        }, 20L, PipesConfig.getTransferCooldown());
+            throttledTransfers.remove(simpleLocation);
+        }
+        Backoff backoff = backoffs.get(simpleLocation);
+        if (backoff != null && backoff.remaining > 0) {
+            backoff.remaining--;
+            return false;
+        }
+        Backoff state = backoff != null ? backoff : new Backoff();
+        TransferResult result = transfer(simpleLocation, state);
+        if (result == TransferResult.BLOCKED) {
+            block(simpleLocation, state, backoff == null);
+        } else if (backoff != null) {
+            unblock(simpleLocation);
+        }
+        return result == TransferResult.DONE;
     }
 
     /**
@@ -149,50 +313,101 @@ public class ItemMoveScheduler {
      * @return <code>true</code> if this transfer should be considered as completed and removed from the queue
      */
     public boolean execute(SimpleLocation simpleLocation) {
-        Location location = simpleLocation.getLocation();
-        if (location.getWorld() == null || !location.getWorld().isChunkLoaded(location.getBlockX() >> 4, location.getBlockZ() >> 4)) {
-            // Chunk is not loaded, cannot transfer items
-            return false;
+        return transfer(simpleLocation, null) == TransferResult.DONE;
+    }
+
+    /**
+     * executes the item transfer
+     *
+     * @param simpleLocation the location of the PipeInput
+     * @param backoff        the state of the last blocked attempt to compare with and to store the fingerprint
+     *                       of this attempt in, <code>null</code> to always transfer
+     * @return the result of the transfer
+     */
+    private TransferResult transfer(SimpleLocation simpleLocation, Backoff backoff) {
+        World world = Bukkit.getWorld(simpleLocation.getWorldName());
+        if (world == null || !world.isChunkLoaded(simpleLocation.getX() >> 4, simpleLocation.getZ() >> 4)) {
+            // Chunk is not loaded, cannot transfer items. Wait for it to load
+            park(simpleLocation, simpleLocation);
+            return TransferResult.DONE;
         }
 
-        Pipe pipe;
-        try {
-            pipe = PipeManager.getInstance().getPipeByInput(simpleLocation);
-        } catch (ChunkNotLoadedException | TooManyOutputsException | PipeTooLongException e) {
-            // Is input of pipe but pipe is not valid, schedule it for next transfer
-            return false;
+        if (PipesConfig.isAsyncDiscovery() && !PipeManager.getInstance().discoverAsync(simpleLocation)) {
+            // The pipe is searched for off the main thread, the input gets scheduled again once it was found
+            return TransferResult.DONE;
         }
-        if (pipe == null) {
-            // No pipe at location? Remove the transfer
-            return true;
+
+        DiscoveryResult result = PipeManager.getInstance().discoverByInput(simpleLocation);
+        switch (result.getStatus()) {
+            case NONE:
+                // No pipe at location? Remove the transfer
+                return TransferResult.DONE;
+            case CHUNK_NOT_LOADED:
+                // Part of the pipe is in an unloaded chunk, wait for that one to load
+                park(simpleLocation, result.getLocation());
+                return TransferResult.DONE;
+            case TOO_LONG:
+            case TOO_MANY_OUTPUTS:
+                // Is input of pipe but pipe is not valid, schedule it for next transfer
+                return TransferResult.BLOCKED;
         }
+        Pipe pipe = result.getPipe();
 
-        if (pipe.getLastTransfer() != Bukkit.getCurrentTick()) {
+        double ratePerTick = PipesConfig.getTransferRate() / 20;
+        if (ratePerTick > 0) {
+            if (pipe.refillTokens(Bukkit.getCurrentTick(), ratePerTick, PipesConfig.getTransferBurst()) < 1) {
+                // Pipe used up its throughput, don't check it again until it has tokens
+                throttle(simpleLocation, pipe, ratePerTick);
+                return TransferResult.RETRY;
+            }
+        } else if (pipe.getLastTransfer() != Bukkit.getCurrentTick()) {
             // Reset transfer count if no transfer occurred this tick
             pipe.setTransfers(0);
         } else if (PipesConfig.getTransferCount() > 0 && pipe.getTransfers() >= PipesConfig.getTransferCount()) {
             // Pipe already transferred more than the max transfer based on hard cap? Handle next tick
-            return false;
+            return TransferResult.RETRY;
         } else if (PipesConfig.getInputToOutputRatio() > 0 && pipe.getTransfers() >= pipe.getOutputs().size() * PipesConfig.getInputToOutputRatio()) {
             // Pipe already transferred more than the max transfer based on the input/output ratio? Handle next tick
-            return false;
+            return TransferResult.RETRY;
         }
 
         PipeInput input = pipe.getInput(simpleLocation);
         if (input == null) {
             // Could not find an input at that location, to not recheck this transfer we return true
-            return true;
+            return TransferResult.DONE;
         }
 
         Container inputHolder = input.getHolder();
         if (inputHolder == null) {
             // Could not find the input block, to not recheck this transfer we return true
-            return true;
+            return TransferResult.DONE;
         }
 
         Inventory inputInventory = inputHolder.getInventory();
+        // read the contents of all involved inventories once and write them back after everything was moved
+        InventoryBuffer source = new InventoryBuffer(inputInventory);
+        long digest = 0;
+        if (backoff != null) {
+            // the buffer's contents are needed for the transfer anyway, hashing them doesn't copy the inventory again
+            digest = digest(source.getContents());
+            if (backoff.hasFingerprint
+                    && backoff.digest == digest
+                    && backoff.topologyVersion == pipe.getTopologyVersion()
+                    && backoff.filterGeneration == PipeOutput.getFilterGeneration()
+                    && Bukkit.getCurrentTick() - backoff.fingerprintTick < FINGERPRINT_TIMEOUT) {
+                // nothing changed since the last attempt that couldn't move anything
+                return TransferResult.BLOCKED;
+            }
+            backoff.hasFingerprint = false;
+        }
+
+        Map<Location, InventoryBuffer> buffers = new HashMap<>();
+        if (inputInventory.getLocation() != null) {
+            // outputs might point back into the input's inventory
+            buffers.put(inputInventory.getLocation(), source);
+        }
         List<ItemStack> itemQueue = new ArrayList<>();
-        for (ItemStack itemStack : inputInventory) {
+        for (ItemStack itemStack : source.getContents()) {
             if (itemStack != null) {
                 itemQueue.add(itemStack);
             }
@@ -209,10 +424,50 @@ public class ItemMoveScheduler {
         boolean spreadFully = input.getOption(PipeInput.Options.FORCE_EQUAL_SPREAD);
         boolean overflow = input.getOption(PipeInput.Options.OVERFLOW);
 
+        boolean throttled = false;
+
         // loop through all items and try to move them
         for (ItemStack itemStack : itemQueue) {
-            transferedAnything |= moveItem(input, inputInventory, pipe, itemStack, spread, spreadFully, overflow);
+            if (ratePerTick > 0) {
+                if (pipe.getTokens() < 1) {
+                    throttled = true;
+                    transferredAll = false;
+                    break;
+                }
+                // only offer as many items as the pipe has tokens left, the rest stays in the input
+                int amount = itemStack.getAmount();
+                int held = 0;
+                if (!PipesConfig.isTransferRateInStacks() && pipe.getTokens() < amount) {
+                    held = amount - (int) pipe.getTokens();
+                    itemStack.setAmount(amount - held);
+                }
+                boolean moved = moveItem(input, inputInventory, source, buffers, pipe, itemStack, spread, spreadFully, overflow);
+                int movedAmount = amount - held - itemStack.getAmount();
+                if (held > 0) {
+                    itemStack.setAmount(itemStack.getAmount() + held);
+                    moved = false;
+                    throttled = true;
+                }
+                if (movedAmount > 0) {
+                    pipe.takeTokens(PipesConfig.isTransferRateInStacks() ? 1 : movedAmount);
+                }
+                transferedAnything |= moved;
+            } else {
+                transferedAnything |= moveItem(input, inputInventory, source, buffers, pipe, itemStack, spread, spreadFully, overflow);
+            }
             transferredAll &= transferedAnything;
+            if (source.isDiscarded()) {
+                // a listener changed the input, the rest is moved with its new contents the next time
+                transferredAll = false;
+                break;
+            }
+        }
+
+        source.flush();
+        for (InventoryBuffer buffer : buffers.values()) {
+            if (buffer != source) {
+                buffer.flush();
+            }
         }
 
         if (!transferredAll && input.getOption(PipeInput.Options.MERGE)) {
@@ -232,17 +487,115 @@ public class ItemMoveScheduler {
             pipe.setLastTransfer(Bukkit.getCurrentTick());
         }
 
-        return transferredAll;
+        if (transferredAll) {
+            return TransferResult.DONE;
+        }
+        if (throttled) {
+            throttle(simpleLocation, pipe, ratePerTick);
+            return TransferResult.RETRY;
+        }
+        if (transferedAnything) {
+            return TransferResult.RETRY;
+        }
+        if (backoff != null) {
+            // outputs that get powered only deny more items, unpowering one wakes up the input through redstoneChanged
+            backoff.hasFingerprint = true;
+            backoff.digest = digest;
+            backoff.topologyVersion = pipe.getTopologyVersion();
+            backoff.filterGeneration = PipeOutput.getFilterGeneration();
+            backoff.fingerprintTick = Bukkit.getCurrentTick();
+        }
+        return TransferResult.BLOCKED;
     }
 
-    private boolean moveItem(PipeInput input, Inventory inputInventory, Pipe pipe, ItemStack itemStack, boolean spread, boolean forceEqualSpread, boolean overflow) {
-        Map<PipeOutput, PipeOutput.AcceptResult> outputs = new LinkedHashMap<>();
+    /**
+     * Don't run the transfer of an input again until its pipe has tokens
+     *
+     * @param input       the location of the input
+     * @param pipe        the pipe of the input
+     * @param ratePerTick the amount of tokens the pipe gets per tick
+     */
+    private void throttle(SimpleLocation input, Pipe pipe, double ratePerTick) {
+        int ticks = pipe.getTicksUntilToken(ratePerTick);
+        if (ticks > 0) {
+            throttledTransfers.put(input, Bukkit.getCurrentTick() + ticks);
+        }
+    }
+
+    /**
+     * Calculate a digest of the contents of an inventory from the type, amount and meta of every slot
+     *
+     * @param contents the storage contents of the inventory
+     * @return the digest
+     */
+    private static long digest(ItemStack[] contents) {
+        long digest = 1;
+        for (ItemStack item : contents) {
+            digest = digest * 31 + (item != null ? item.hashCode() : 0);
+        }
+        return digest;
+    }
+
+    /**
+     * Call an event during a transfer. Listeners of other plugins may read or change the input's and the target's
+     * inventory, so the changes that are still buffered for them are written before the event is called. If a
+     * listener changed the target its buffer is replaced with one that has the new contents, if it changed the
+     * input the source buffer is discarded as the stacks that are being moved come from it.
+     *
+     * @param event   the event to call
+     * @param source  the buffer of the input's inventory
+     * @param buffers the buffers of the transfer by inventory location
+     * @param target  the target inventory of the event or <code>null</code> if it has none
+     * @return <code>true</code> if the transfer can go on; <code>false</code> if the source buffer was discarded
+     */
+    static boolean callTransferEvent(Event event, InventoryBuffer source, Map<Location, InventoryBuffer> buffers, Inventory target) {
+        if (!hasOtherListeners(event)) {
+            // this plugin's own listeners don't touch the contents
+            Bukkit.getPluginManager().callEvent(event);
+            return true;
+        }
+
+        Location targetLocation = target != null && InventoryBuffer.supports(target) ? target.getLocation() : null;
+        InventoryBuffer targetBuffer = targetLocation != null ? buffers.get(targetLocation) : null;
+        source.flush();
+        if (targetBuffer != null && targetBuffer != source) {
+            targetBuffer.flush();
+        }
+
+        Bukkit.getPluginManager().callEvent(event);
+
+        if (targetBuffer != null && targetBuffer != source && !targetBuffer.isCurrent()) {
+            buffers.put(targetLocation, new InventoryBuffer(target));
+        }
+        if (!source.isCurrent()) {
+            source.discard();
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean hasOtherListeners(Event event) {
+        for (RegisteredListener listener : event.getHandlers().getRegisteredListeners()) {
+            if (listener.getPlugin() != Pipes.getInstance()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean moveItem(PipeInput input, Inventory inputInventory, InventoryBuffer source, Map<Location, InventoryBuffer> buffers, Pipe pipe, ItemStack itemStack, boolean spread, boolean forceEqualSpread, boolean overflow) {
+        Route route = pipe.getRoute(itemStack);
+        List<PipeOutput> outputs = new ArrayList<>(route.size());
+        List<PipeOutput.AcceptResult> acceptResults = new ArrayList<>(route.size());
         int filterCount = 0;
         try (MCTiming t = TIMINGS_MOVE_FILTER.startTiming()) {
-            for (PipeOutput output : pipe.getOutputs().values()) {
-                PipeOutput.AcceptResult acceptResult = output.accepts(input, itemStack);
+            // the route is already sorted with the outputs that have the item in their filter first
+            for (int i = 0; i < route.size(); i++) {
+                PipeOutput output = route.getOutput(i);
+                PipeOutput.AcceptResult acceptResult = output.accepts(input, route.getFilterResult(i));
                 if (!spread || acceptResult.getType() == PipeOutput.ResultType.ACCEPT) {
-                    outputs.put(output, acceptResult);
+                    outputs.add(output);
+                    acceptResults.add(acceptResult);
                     if (acceptResult.isInFilter()) {
                         filterCount++;
                     }
@@ -252,10 +605,6 @@ public class ItemMoveScheduler {
             if (outputs.isEmpty()) {
                 return false;
             }
-
-            outputs = outputs.entrySet().stream()
-                    .sorted((e1, e2) -> e1.getValue().isInFilter() ? e2.getValue().isInFilter() ? 0 : -1 : e2.getValue().isInFilter() ? 1 : 0)
-                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (oldValue, newValue) -> oldValue, LinkedHashMap::new));
         }
 
         // Calculate amount that should be spread over the outputs (when in spread mode)
@@ -272,25 +621,43 @@ public class ItemMoveScheduler {
 
         try (MCTiming t = TIMINGS_MOVE_TRANSFER.startTiming()) {
             // loop through all outputs
-            for (Map.Entry<PipeOutput, PipeOutput.AcceptResult> entry : outputs.entrySet()) {
+            for (int i = 0; i < outputs.size(); i++) {
                 // we don't need to move empty/already moved itemstacks
                 if (itemStack.getAmount() <= 0) {
                     return true;
                 }
 
-                PipeOutput output = entry.getKey();
+                PipeOutput output = outputs.get(i);
                 // Don't allow looping back into input
                 if (output.getTargetLocation().equals(input.getTargetLocation())) {
                     continue;
                 }
+
+                if (!saturatedTargets.isEmpty()) {
+                    if (isSaturated(output.getTargetLocation(), route.getKey())) {
+                        // the target was full the last time, nothing gets moved so only check the overflow
+                        PipeOutput.Options.Overflow outputOverflow = output.getOption(PipeOutput.Options.OVERFLOW);
+                        if (!spread && acceptResults.get(i).isInFilter() &&
+                                (outputOverflow == PipeOutput.Options.Overflow.FALSE || (!overflow && outputOverflow == PipeOutput.Options.Overflow.INPUT))) {
+                            return false;
+                        }
+                        continue;
+                    }
+                }
+
                 Block targetBlock = output.getTargetLocation().getBlock();
                 InventoryHolder targetHolder = output.getTargetHolder();
                 Inventory targetInventory = targetHolder != null ? targetHolder.getInventory() : null;
+                InventoryBuffer targetBuffer = null;
+                if (targetInventory != null && InventoryBuffer.supports(targetInventory)) {
+                    Inventory inventory = targetInventory;
+                    targetBuffer = buffers.computeIfAbsent(inventory.getLocation(), l -> new InventoryBuffer(inventory));
+                }
 
                 PipeOutput.Options.Overflow outputOverflow = output.getOption(PipeOutput.Options.OVERFLOW);
 
                 ItemStack transferring = itemStack;
-                PipeOutput.AcceptResult acceptResult = entry.getValue();
+                PipeOutput.AcceptResult acceptResult = acceptResults.get(i);
 
                 // Set the spread amount
                 if (spread) {
@@ -318,7 +685,7 @@ public class ItemMoveScheduler {
                         && output.getOption(PipeOutput.Options.TARGET_AMOUNT)) {
                     int amountInTarget = 0;
                     try (MCTiming t2 = TIMINGS_MOVE_FILTER_AMOUNT.startTiming()) {
-                        for (ItemStack item : targetInventory) {
+                        for (ItemStack item : targetBuffer != null ? targetBuffer.getContents() : targetInventory.getContents()) {
                             if (output.matchesFilter(acceptResult.getFilterItem(), item)) {
                                 amountInTarget += item.getAmount();
                                 if (amountInTarget > acceptResult.getFilterItem().getAmount()) {
@@ -359,7 +726,9 @@ public class ItemMoveScheduler {
                     );
 
                     PipeDispenseEvent pipeDispenseEvent = new PipeDispenseEvent(pipe, output, transferring, motion);
-                    Pipes.getInstance().getServer().getPluginManager().callEvent(pipeDispenseEvent);
+                    if (!callTransferEvent(pipeDispenseEvent, source, buffers, null)) {
+                        return false;
+                    }
                     if (pipeDispenseEvent.isCancelled()) {
                         continue;
                     }
@@ -375,10 +744,16 @@ public class ItemMoveScheduler {
                 } else if (targetInventory != null) {
                     // call move event before doing any moving to check if it was cancelled
                     PipeMoveItemEvent pipeMoveEvent = new PipeMoveItemEvent(pipe, output, inputInventory, transferring, targetInventory);
-                    Pipes.getInstance().getServer().getPluginManager().callEvent(pipeMoveEvent);
+                    if (!callTransferEvent(pipeMoveEvent, source, buffers, targetInventory)) {
+                        return false;
+                    }
                     if (pipeMoveEvent.isCancelled()) {
                         continue;
                     }
+                    if (targetBuffer != null) {
+                        // the buffer is replaced if a listener changed the target
+                        targetBuffer = buffers.get(targetInventory.getLocation());
+                    }
 
                     boolean smartInsert = output.getOption(PipeOutput.Options.SMART_INSERT);
 
@@ -392,16 +767,15 @@ public class ItemMoveScheduler {
                             // try to put coal etc in the correct place
                             // lava buckets are not seen as fuel by spigot, therefore we have to manually check for it
                             if ((transferring.getType().isFuel() || transferring.getType().equals(Material.LAVA_BUCKET)) && (smartInsert || (output.getFacing() != BlockFace.DOWN && output.getFacing() != BlockFace.UP))) {
-                                PipesUtil.addFuel(inputInventory, targetInventory, transferring);
+                                PipesUtil.addFuel(targetInventory, transferring);
                             } else if (smartInsert || output.getFacing() == BlockFace.DOWN) {
                                 FurnaceInventory furnaceInventory = (FurnaceInventory) targetInventory;
                                 ItemStack smelting = furnaceInventory.getSmelting();
                                 if (smelting == null) {
-                                    inputInventory.removeItem(new ItemStack(transferring));
-                                    furnaceInventory.setSmelting(transferring);
+                                    furnaceInventory.setSmelting(new ItemStack(transferring));
                                     transferring.setAmount(0);
                                 } else if (smelting.isSimilar(transferring)) {
-                                    ItemStack itemToSet = PipesUtil.moveToSingleSlot(inputInventory, smelting, transferring);
+                                    ItemStack itemToSet = PipesUtil.moveToSingleSlot(smelting, transferring);
                                     if (itemToSet != null) {
                                         furnaceInventory.setSmelting(itemToSet);
                                     }
@@ -427,10 +801,6 @@ public class ItemMoveScheduler {
                                         }
                                         int firstEmpty = brewerInventory.firstEmpty();
                                         while (firstEmpty != -1 && firstEmpty < 3 && transferring.getAmount() > 0) {
-                                            ItemStack remove = new ItemStack(transferring);
-                                            remove.setAmount(1);
-                                            inputInventory.removeItem(remove);
-
                                             ItemStack result = new ItemStack(transferring);
                                             result.setAmount(1);
 
@@ -447,7 +817,7 @@ public class ItemMoveScheduler {
                                     // the transported item is fuel
                                     // only insert if pointing from the side, smart insert will treat it as an ingredient
                                     if (!smartInsert && output.getFacing() != BlockFace.DOWN && output.getFacing() != BlockFace.UP) {
-                                        if (!PipesUtil.addFuel(inputInventory, brewerInventory, transferring)) {
+                                        if (!PipesUtil.addFuel(brewerInventory, transferring)) {
                                             continue;
                                         }
                                         break;
@@ -456,11 +826,10 @@ public class ItemMoveScheduler {
                                     if (smartInsert || output.getFacing() == BlockFace.DOWN) {
                                         ItemStack ingredient = brewerInventory.getIngredient();
                                         if (ingredient == null) {
-                                            inputInventory.removeItem(new ItemStack(transferring));
-                                            brewerInventory.setIngredient(transferring);
+                                            brewerInventory.setIngredient(new ItemStack(transferring));
                                             transferring.setAmount(0);
                                         } else if (ingredient.isSimilar(transferring)) {
-                                            ItemStack itemToSet = PipesUtil.moveToSingleSlot(inputInventory, ingredient, transferring);
+                                            ItemStack itemToSet = PipesUtil.moveToSingleSlot(ingredient, transferring);
                                             if (itemToSet != null) {
                                                 brewerInventory.setIngredient(itemToSet);
                                             }
@@ -504,7 +873,18 @@ public class ItemMoveScheduler {
                      */
                         default:
                             // for chests, dropper etc...
-                            PipesUtil.addItem(targetInventory, transferring);
+                            int amountBefore = transferring.getAmount();
+                            if (targetBuffer != null) {
+                                targetBuffer.addItem(transferring);
+                            } else {
+                                PipesUtil.addItem(targetInventory, transferring);
+                            }
+                            if (amountBefore > 0 && transferring.getAmount() == amountBefore) {
+                                // nothing fit, don't try this item again until the target changes
+                                saturatedTargets.computeIfAbsent(output.getTargetLocation(), l -> new HashMap<>())
+                                        .put(route.getKey(), Bukkit.getCurrentTick());
+                                watch(output.getTargetLocation());
+                            }
                             break;
                     /*
                     END DEFAULT
@@ -554,6 +934,12 @@ public class ItemMoveScheduler {
         Pipes.getInstance().getServer().getScheduler().cancelTask(taskId);
         taskId = -1;
         emptyRuns = 0;
+        saturatedTargets.clear();
+        if (blockedByWatched.isEmpty()) {
+            watchedKeys.clear();
+        }
+        roundRemaining.clear();
+        roundTicks = 0;
     }
 
     /**
@@ -582,6 +968,241 @@ public class ItemMoveScheduler {
         }
     }
 
+    /**
+     * Let a blocked input wait before it gets checked again and watch the outputs of its pipe
+     *
+     * @param input   the location of the input
+     * @param backoff the backoff of the input
+     * @param isNew   whether or not the input wasn't blocked before
+     */
+    private void block(SimpleLocation input, Backoff backoff, boolean isNew) {
+        if (isNew) {
+            backoffs.put(input, backoff);
+            Pipe pipe = PipeManager.getInstance().getCachedPipe(input);
+            if (pipe != null) {
+                List<SimpleLocation> watched = new ArrayList<>();
+                // changed options of the input itself
+                watched.add(input);
+                for (PipeOutput output : pipe.getOutputs().values()) {
+                    watched.add(output.getLocation());
+                    watched.add(output.getTargetLocation());
+                }
+                backoff.watched = watched;
+                for (SimpleLocation location : watched) {
+                    blockedByWatched.computeIfAbsent(location, l -> new LinkedHashSet<>()).add(input);
+                    watch(location);
+                }
+            }
+        }
+        backoff.delay = Math.min(backoff.delay > 0 ? backoff.delay * 2 : 1, PipesConfig.getTransferBackoff());
+        backoff.remaining = backoff.delay;
+    }
+
+    /**
+     * Remove the backoff of an input so that it gets checked on the next cycle
+     *
+     * @param input the location of the input
+     */
+    private void unblock(SimpleLocation input) {
+        Backoff backoff = backoffs.remove(input);
+        if (backoff != null && backoff.watched != null) {
+            for (SimpleLocation location : backoff.watched) {
+                Set<SimpleLocation> inputs = blockedByWatched.get(location);
+                if (inputs != null) {
+                    inputs.remove(input);
+                    if (inputs.isEmpty()) {
+                        blockedByWatched.remove(location);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Wake up the blocked inputs that watch a location. That is the input itself and the outputs
+     * of its pipe as well as the blocks they point into.
+     *
+     * @param location the location of the changed input, output or target block
+     */
+    public void wakeBlocked(SimpleLocation location) {
+        Set<SimpleLocation> inputs = blockedByWatched.get(location);
+        if (inputs != null) {
+            for (SimpleLocation input : new ArrayList<>(inputs)) {
+                unblock(input);
+            }
+        }
+    }
+
+    /**
+     * Add a location to the watched keys
+     *
+     * @param location the location of the watched or saturated block
+     */
+    private void watch(SimpleLocation location) {
+        watchedKeys.computeIfAbsent(location.getWorldName(), w -> new LongHashSet()).add(location.getKey());
+    }
+
+    /**
+     * Check whether or not an item didn't fit into a target the last time it was tried
+     *
+     * @param target      the location of the target block
+     * @param fingerprint the key of the item's route
+     * @return <code>true</code> if the target is known to be full for that item
+     */
+    private boolean isSaturated(SimpleLocation target, ItemStack fingerprint) {
+        Map<ItemStack, Integer> saturated = saturatedTargets.get(target);
+        if (saturated == null) {
+            return false;
+        }
+        Integer tick = saturated.get(fingerprint);
+        if (tick == null) {
+            return false;
+        }
+        if (Bukkit.getCurrentTick() - tick > SATURATION_TIMEOUT) {
+            saturated.remove(fingerprint);
+            if (saturated.isEmpty()) {
+                saturatedTargets.remove(target);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Handle a change of an inventory that might be the target of an output. This clears its saturated items and
+     * wakes up the blocked inputs of all pipes that have an output at or pointing into its block.
+     *
+     * @param inventory the changed inventory
+     */
+    public void targetChanged(Inventory inventory) {
+        if (watchedKeys.isEmpty() || inventory.getType() == InventoryType.PLAYER || inventory.getType() == InventoryType.CRAFTING) {
+            // nothing is watched or the inventory doesn't belong to a block
+            return;
+        }
+        if (inventory instanceof DoubleChestInventory) {
+            targetChanged(((DoubleChestInventory) inventory).getLeftSide());
+            targetChanged(((DoubleChestInventory) inventory).getRightSide());
+            return;
+        }
+        Location location = inventory.getLocation();
+        if (location != null && location.getWorld() != null) {
+            targetChanged(location.getWorld().getName(), location.getBlockX(), location.getBlockY(), location.getBlockZ());
+        }
+    }
+
+    /**
+     * Handle a change of the inventory of a block that might be the target of an output. This only probes the
+     * watched keys by the packed coordinates and doesn't create any objects unless the block is watched.
+     *
+     * @param worldName the name of the world
+     * @param x         the x coordinate
+     * @param y         the y coordinate
+     * @param z         the z coordinate
+     * @see #targetChanged(Inventory)
+     */
+    public void targetChanged(String worldName, int x, int y, int z) {
+        LongHashSet worldKeys = watchedKeys.get(worldName);
+        long key = SimpleLocation.pack(x, y, z);
+        if (worldKeys == null || !worldKeys.contains(key)) {
+            return;
+        }
+        // the saturation and the blocked inputs of the block get cleared below, entries of inputs that were unblocked
+        // otherwise are only removed here
+        worldKeys.remove(key);
+        if (worldKeys.isEmpty()) {
+            watchedKeys.remove(worldName);
+        }
+        boolean saturated = saturatedTargets.containsKey(worldName, x, y, z);
+        boolean watched = blockedByWatched.containsKey(worldName, x, y, z);
+        if (saturated || watched) {
+            SimpleLocation simpleLocation = new SimpleLocation(worldName, x, y, z);
+            if (saturated) {
+                saturatedTargets.remove(simpleLocation);
+            }
+            if (watched) {
+                wakeBlocked(simpleLocation);
+            }
+        }
+    }
+
+    /**
+     * Handle a redstone component that stopped giving power. This wakes up the blocked inputs of all pipes with
+     * an output in its reach as those outputs might accept items again. Only the watched keys are probed.
+     *
+     * @param block the redstone component
+     */
+    public void redstoneChanged(Block block) {
+        String worldName = block.getWorld().getName();
+        LongHashSet worldKeys = watchedKeys.get(worldName);
+        if (worldKeys == null) {
+            return;
+        }
+        for (int dx = -REDSTONE_REACH; dx <= REDSTONE_REACH; dx++) {
+            int reachY = REDSTONE_REACH - Math.abs(dx);
+            for (int dy = -reachY; dy <= reachY; dy++) {
+                int reachZ = reachY - Math.abs(dy);
+                for (int dz = -reachZ; dz <= reachZ; dz++) {
+                    int x = block.getX() + dx;
+                    int y = block.getY() + dy;
+                    int z = block.getZ() + dz;
+                    if (worldKeys.contains(SimpleLocation.pack(x, y, z))) {
+                        targetChanged(worldName, x, y, z);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Park a transfer until the chunk of a location gets loaded
+     *
+     * @param scheduledItemTransfer the item transfer
+     * @param unloaded              the location in the chunk that isn't loaded
+     */
+    void park(SimpleLocation scheduledItemTransfer, SimpleLocation unloaded) {
+        parkedItemTransfers.computeIfAbsent(unloaded.getWorldName(), w -> new LongObjectMap<>())
+                .computeIfAbsent(unloaded.getChunkKey(), k -> new LinkedHashSet<>())
+                .add(scheduledItemTransfer);
+    }
+
+    /**
+     * Schedule all transfers again that were waiting for a chunk to load
+     *
+     * @param worldName the name of the world
+     * @param chunkX    the x coordinate of the chunk
+     * @param chunkZ    the z coordinate of the chunk
+     */
+    public void wake(String worldName, int chunkX, int chunkZ) {
+        LongObjectMap<Set<SimpleLocation>> worldParked = parkedItemTransfers.get(worldName);
+        if (worldParked == null) {
+            return;
+        }
+        Set<SimpleLocation> parked = worldParked.remove(SimpleLocation.chunkKey(chunkX, chunkZ));
+        if (worldParked.isEmpty()) {
+            parkedItemTransfers.remove(worldName);
+        }
+        if (parked != null) {
+            for (SimpleLocation location : parked) {
+                add(location);
+            }
+        }
+    }
+
+    /**
+     * returns the transfers that are waiting for a chunk to load
+     *
+     * @return the parked transfers
+     */
+    public Set<SimpleLocation> getParkedTransfers() {
+        Set<SimpleLocation> parked = new LinkedHashSet<>();
+        for (LongObjectMap<Set<SimpleLocation>> worldParked : parkedItemTransfers.values()) {
+            for (Set<SimpleLocation> locations : worldParked.values()) {
+                parked.addAll(locations);
+            }
+        }
+        return parked;
+    }
+
     private void addQueued() {
         scheduledItemTransfers.addAll(addItemTransfers);
         addItemTransfers.clear();
@@ -608,7 +1229,9 @@ public class ItemMoveScheduler {
         getInstance().kill();
         YamlConfiguration oldTransfers = new YamlConfiguration();
         List<Map<String, Object>> transferList = new ArrayList<>();
-        for (SimpleLocation transfer : getInstance().getTransfers()) {
+        Set<SimpleLocation> transfers = new LinkedHashSet<>(getInstance().getTransfers());
+        transfers.addAll(getInstance().getParkedTransfers());
+        for (SimpleLocation transfer : transfers) {
             transferList.add(transfer.serialize());
         }
         oldTransfers.set("transfers", transferList);
@@ -620,4 +1243,53 @@ public class ItemMoveScheduler {
         }
     }
 
+    private enum TransferResult {
+        /**
+         * everything was moved or the transfer can't happen, remove it from the queue
+         */
+        DONE,
+        /**
+         * something was moved or the pipe hit a transfer limit, try again on the next cycle
+         */
+        RETRY,
+        /**
+         * nothing could be moved
+         */
+        BLOCKED
+    }
+
+    private static class Backoff {
+        /**
+         * the amount of cycles the input waited the last time it was blocked
+         */
+        private int delay = 0;
+        /**
+         * the amount of cycles the input still needs to wait
+         */
+        private int remaining = 0;
+        /**
+         * the locations whose change wakes up the input
+         */
+        private List<SimpleLocation> watched = null;
+        /**
+         * whether or not the following fingerprint of the last attempt is set
+         */
+        private boolean hasFingerprint = false;
+        /**
+         * the digest of the input's contents
+         */
+        private long digest;
+        /**
+         * the topology version of the pipe
+         */
+        private int topologyVersion;
+        /**
+         * the generation of all output filters
+         */
+        private int filterGeneration;
+        /**
+         * the tick of the attempt
+         */
+        private int fingerprintTick;
+    }
 }
@@ -9,36 +9,52 @@ import com.google.common.cache.RemovalNotification;
 import io.github.apfelcreme.Pipes.Exception.ChunkNotLoadedException;
 import io.github.apfelcreme.Pipes.Exception.PipeTooLongException;
 import io.github.apfelcreme.Pipes.Exception.TooManyOutputsException;
+import io.github.apfelcreme.Pipes.Index.LocationMap;
+import io.github.apfelcreme.Pipes.Index.LongObjectMap;
+import io.github.apfelcreme.Pipes.Index.LongHashSet;
 import io.github.apfelcreme.Pipes.Pipe.AbstractPipePart;
 import io.github.apfelcreme.Pipes.Pipe.ChunkLoader;
 import io.github.apfelcreme.Pipes.Pipe.Pipe;
 import io.github.apfelcreme.Pipes.Pipe.PipeInput;
 import io.github.apfelcreme.Pipes.Pipe.PipeOutput;
+import io.github.apfelcreme.Pipes.Pipe.PipeRecord;
 import io.github.apfelcreme.Pipes.Pipe.SimpleLocation;
+import io.github.apfelcreme.Pipes.Pipes;
 import io.github.apfelcreme.Pipes.PipesConfig;
 import io.github.apfelcreme.Pipes.PipesItem;
 import io.github.apfelcreme.Pipes.PipesUtil;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
 import org.bukkit.block.BlockState;
 import org.bukkit.block.Container;
+import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.InventoryHolder;
 import org.bukkit.persistence.PersistentDataType;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.WeakHashMap;
-import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 
 /*
  * Copyright (C) 2016 Lord36 aka Apfelcreme
@@ -66,37 +82,462 @@ public class PipeManager {
     private static PipeManager instance = null;
 
     /**
-     * a cache to stop endless pipe checks
+     * a cache to stop endless pipe checks. Unlike the other caches this one is still keyed by {@link SimpleLocation}
+     * as it needs Guava's eviction, it only has one entry per input and not per pipe block.
      */
-    private final Cache<SimpleLocation, Pipe> pipeCache;
+    private Cache<SimpleLocation, Pipe> pipeCache;
 
     /**
      * a cache to stop endless pipe checks, this is for parts that can be attached to only one pipe (glass pipe blocks)
      */
-    private final Map<SimpleLocation, Pipe> singleCache;
+    private final LocationMap<Pipe> singleCache;
 
     /**
      * a cache to stop endless pipe checks, this is for parts that can be attached to multiple pipes (outputs and chunk loader)
      */
-    private final Map<SimpleLocation, Set<Pipe>> multiCache;
+    private final LocationMap<Set<Pipe>> multiCache;
 
     /**
      * A cache for pipe parts
      */
-    private final Map<SimpleLocation, AbstractPipePart> pipePartCache;
+    private final LocationMap<AbstractPipePart> pipePartCache;
+
+    /**
+     * locations of blocks that have the material of a pipe part but are no pipe part
+     */
+    private final LocationMap<Boolean> nonPartCache;
+
+    private static final int NON_PART_CACHE_SIZE = 10000;
+
+    /**
+     * packed locations of the pipe parts in loaded chunks, by world name and chunk key. A chunk only
+     * gets an entry once it was scanned, blocks in scanned chunks that aren't in here can't be a pipe part.
+     */
+    private final Map<String, LongObjectMap<LongHashSet>> knownParts = new HashMap<>();
+
+    /**
+     * shared entry of scanned chunks without any pipe parts, it never gets modified
+     */
+    private static final LongHashSet NO_PARTS = new LongHashSet();
+
+    /**
+     * the cached pipes by the world and the keys of the chunks that they are in. Entries of chunks
+     * that a pipe doesn't reach into anymore are only removed once that chunk unloads.
+     */
+    private final Map<String, LongObjectMap<Set<Pipe>>> chunkPipes = new HashMap<>();
+
+    /**
+     * pipes that were stored on the last shutdown or whose chunks were unloaded and that weren't used yet,
+     * by the locations of their inputs
+     */
+    private final LocationMap<PipeRecord> storedPipes;
+
+    /**
+     * the stored pipes by the world and the keys of the chunks that they need to be restored
+     */
+    private final Map<String, LongObjectMap<Set<PipeRecord>>> chunkRecords = new HashMap<>();
+
+    /**
+     * inputs whose pipe was found to be invalid, with the reason why. They aren't searched again
+     * until a block in the footprint of their result changes.
+     */
+    private final LocationMap<DiscoveryResult> invalidInputs = new LocationMap<>();
+
+    /**
+     * the inputs in {@link #invalidInputs} by the locations in the footprints of their results
+     */
+    private final LocationMap<Set<SimpleLocation>> invalidFootprints = new LocationMap<>();
+
+    /**
+     * searches unknown pipes off the main thread
+     */
+    private final AsyncPipeDiscovery asyncDiscovery;
+
+    /**
+     * counts changes to pipe blocks and parts in the world, used to detect outdated searches
+     */
+    private int blockChanges = 0;
+
+    /**
+     * the cached pipes that still need to be checked against the world in the current revalidation round
+     */
+    private final Queue<Pipe> revalidationQueue = new ArrayDeque<>();
+
+    /**
+     * the number of pipes that get checked per second in the current revalidation round
+     */
+    private int revalidationSlice = 0;
+
+    private int revalidationTaskId = -1;
 
     /**
      * constructor
      */
     private PipeManager() {
-        pipeCache = CacheBuilder.newBuilder()
-                .maximumSize(PipesConfig.getPipeCacheSize())
-                .expireAfterWrite(PipesConfig.getPipeCacheDuration(), TimeUnit.SECONDS)
-                .removalListener(new PipeRemovalListener())
-                .build();
-        singleCache = new HashMap<>();
-        multiCache = new HashMap<>();
-        pipePartCache = new HashMap<>();
+        pipeCache = buildPipeCache();
+        singleCache = new LocationMap<>();
+        multiCache = new LocationMap<>();
+        pipePartCache = new LocationMap<>();
+        nonPartCache = new LocationMap<>();
+        storedPipes = new LocationMap<>();
+        asyncDiscovery = new AsyncPipeDiscovery(this);
+    }
+
+    private Cache<SimpleLocation, Pipe> buildPipeCache() {
+        if (PipesConfig.getPipeCacheWeight() > 0 && PipesConfig.getPipeCacheWeight() < PipesConfig.getMaxPipeLength()) {
+            Pipes.getInstance().getLogger().log(Level.WARNING, "pipeCacheWeight (" + PipesConfig.getPipeCacheWeight()
+                    + ") is smaller than maxPipeLength (" + PipesConfig.getMaxPipeLength()
+                    + "), pipes of that length will never stay cached!");
+        }
+        return buildPipeCache(PipesConfig.getPipeCacheSize(), PipesConfig.getPipeCacheWeight(), new PipeRemovalListener());
+    }
+
+    /**
+     * Build a pipe cache. Its entries don't expire, idle pipes are removed by the pipe manager as a whole.
+     *
+     * @param maximumSize     the max number of cached inputs, only used without a max weight
+     * @param maximumWeight   the max total weight of the cached pipes, 0 to limit the cache by size
+     * @param removalListener the listener that gets notified about removed entries
+     * @return the new cache
+     */
+    static Cache<SimpleLocation, Pipe> buildPipeCache(long maximumSize, long maximumWeight, RemovalListener<SimpleLocation, Pipe> removalListener) {
+        CacheBuilder<SimpleLocation, Pipe> builder = CacheBuilder.newBuilder()
+                .removalListener(removalListener);
+        if (maximumWeight > 0) {
+            // every input of a pipe has its own entry, they share the weight of the pipe. A single segment
+            // makes the max weight apply to the whole cache instead of being split between segments
+            builder.maximumWeight(maximumWeight)
+                    .concurrencyLevel(1)
+                    .weigher((SimpleLocation location, Pipe pipe) -> pipe.getCacheWeight());
+        } else {
+            builder.maximumSize(maximumSize);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Rebuild the pipe cache with the current settings and move all cached pipes into it.
+     * Pipes that don't fit into the new cache anymore get unregistered like on a normal eviction.
+     */
+    public void reload() {
+        Cache<SimpleLocation, Pipe> oldCache = pipeCache;
+        // unregister pipes that already expired while the old cache is still in use
+        oldCache.cleanUp();
+        pipeCache = buildPipeCache();
+        Set<Pipe> pipes = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Pipe pipe : oldCache.asMap().values()) {
+            pipes.add(pipe.resolve());
+        }
+        for (Pipe pipe : pipes) {
+            // add all inputs of a pipe together so that an eviction removes it completely
+            cachePipe(pipe);
+        }
+        // the old cache is only dropped, invalidating its entries would unregister the migrated pipes
+
+        // the limits might have changed
+        invalidInputs.clear();
+        invalidFootprints.clear();
+
+        startRevalidation();
+    }
+
+    /**
+     * Start checking the cached pipes with the current settings. Every cached pipe is checked once per configured
+     * revalidation interval (or once per cache duration if revalidation is disabled), spread over the interval so
+     * that only a few pipes are checked each second.
+     */
+    public void startRevalidation() {
+        if (revalidationTaskId != -1) {
+            Bukkit.getScheduler().cancelTask(revalidationTaskId);
+            revalidationTaskId = -1;
+        }
+        revalidationQueue.clear();
+        revalidationTaskId = Bukkit.getScheduler().scheduleSyncRepeatingTask(Pipes.getInstance(), this::revalidate, 20L, 20L);
+    }
+
+    /**
+     * Check the next slice of cached pipes. Idle pipes are removed from the caches, the others are checked
+     * against the world if revalidation is enabled and removed if they changed without an event so that
+     * they get searched again on their next transfer. Starts a new round once all are checked.
+     */
+    private void revalidate() {
+        if (revalidationQueue.isEmpty()) {
+            Set<Pipe> pipes = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Pipe pipe : pipeCache.asMap().values()) {
+                pipes.add(pipe.resolve());
+            }
+            revalidationQueue.addAll(pipes);
+            long interval = PipesConfig.getPipeRevalidation() > 0 ? PipesConfig.getPipeRevalidation() : PipesConfig.getPipeCacheDuration();
+            revalidationSlice = (int) Math.ceil(pipes.size() / (double) Math.max(interval, 1));
+        }
+        for (int i = 0; i < revalidationSlice && !revalidationQueue.isEmpty(); i++) {
+            Pipe pipe = revalidationQueue.remove();
+            if (!isRegistered(pipe)) {
+                // already removed or replaced by a different pipe
+                continue;
+            }
+            if (isIdle(pipe, Bukkit.getCurrentTick(), PipesConfig.getPipeCacheDuration())) {
+                unregisterPipe(pipe);
+                continue;
+            }
+            if (PipesConfig.getPipeRevalidation() <= 0) {
+                continue;
+            }
+            SimpleLocation start = pipe.getInputs().keySet().iterator().next();
+            if (pipe.getUnloadedLocation(start) != null) {
+                // can't be changed while its chunks aren't loaded
+                continue;
+            }
+            if (!matchesWorld(pipe)) {
+                removePipe(pipe);
+            }
+        }
+    }
+
+    /**
+     * Check whether or not none of the inputs of a pipe looked it up for longer than the cache duration
+     *
+     * @param pipe     the pipe
+     * @param tick     the current tick
+     * @param duration the cache duration in seconds
+     * @return <code>true</code> if the pipe is idle and should be removed from the caches
+     */
+    static boolean isIdle(Pipe pipe, int tick, long duration) {
+        return tick - pipe.getLastAccess() >= duration * 20;
+    }
+
+    /**
+     * Check whether or not a pipe is still in the caches and wasn't removed or replaced by a different pipe
+     *
+     * @param pipe the pipe
+     * @return <code>true</code> if the pipe is registered; <code>false</code> if not
+     */
+    private boolean isRegistered(Pipe pipe) {
+        if (pipe.isMerged() || pipe.getInputs().isEmpty() || pipe.getPipeBlocks().isEmpty()) {
+            return false;
+        }
+        Pipe cached = singleCache.get(pipe.getPipeBlocks().iterator().next());
+        return cached != null && cached.resolve() == pipe;
+    }
+
+    /**
+     * Restore the stored pipes that reach into this chunk once all of their chunks are loaded,
+     * so that their inputs don't have to restore them during their first transfer
+     *
+     * @param chunk the chunk that was loaded
+     */
+    public void loadChunk(Chunk chunk) {
+        LongObjectMap<Set<PipeRecord>> chunks = chunkRecords.get(chunk.getWorld().getName());
+        if (chunks == null) {
+            return;
+        }
+        Set<PipeRecord> records = chunks.get(SimpleLocation.chunkKey(chunk.getX(), chunk.getZ()));
+        if (records == null) {
+            return;
+        }
+        for (PipeRecord record : new ArrayList<>(records)) {
+            if (isLoaded(chunk.getWorld(), record)) {
+                try {
+                    restorePipe(SimpleLocation.unpack(record.getWorldName(), record.getInputs()[0]));
+                } catch (ChunkNotLoadedException ignored) {
+                    // all chunks were checked to be loaded
+                }
+            }
+        }
+    }
+
+    private static boolean isLoaded(World world, PipeRecord record) {
+        for (long chunkKey : record.getChunkKeys()) {
+            if (!world.isChunkLoaded((int) chunkKey, (int) (chunkKey >> 32))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Turn all cached pipes that are only in unloaded chunks once this chunk unloads into stored pipes.
+     * They get restored from their record once all of their chunks are loaded again or when one of their inputs is used.
+     *
+     * @param chunk the chunk that unloads
+     */
+    public void unloadChunk(Chunk chunk) {
+        long chunkKey = SimpleLocation.chunkKey(chunk.getX(), chunk.getZ());
+        LongObjectMap<LongHashSet> worldParts = knownParts.get(chunk.getWorld().getName());
+        if (worldParts != null) {
+            worldParts.remove(chunkKey);
+        }
+        LongObjectMap<Set<Pipe>> chunks = chunkPipes.get(chunk.getWorld().getName());
+        if (chunks == null) {
+            return;
+        }
+        Set<Pipe> pipes = chunks.get(chunkKey);
+        if (pipes == null) {
+            return;
+        }
+        for (Pipe pipe : new ArrayList<>(pipes)) {
+            if (!isRegistered(pipe) || Arrays.binarySearch(pipe.getChunkKeys(), chunkKey) < 0) {
+                // the pipe doesn't reach into this chunk anymore
+                pipes.remove(pipe);
+            } else if (isUnloaded(chunk.getWorld(), pipe, chunkKey)) {
+                demotePipe(pipe);
+            }
+        }
+        if (pipes.isEmpty()) {
+            chunks.remove(chunkKey);
+        }
+    }
+
+    /**
+     * Turn all cached pipes of a world into stored pipes and forget everything else about the world
+     *
+     * @param world the world that unloads
+     */
+    public void unloadWorld(World world) {
+        LongObjectMap<Set<Pipe>> chunks = chunkPipes.get(world.getName());
+        if (chunks != null) {
+            Set<Pipe> pipes = Collections.newSetFromMap(new IdentityHashMap<>());
+            chunks.forEach((chunkKey, pipesInChunk) -> pipes.addAll(pipesInChunk));
+            for (Pipe pipe : pipes) {
+                if (isRegistered(pipe)) {
+                    demotePipe(pipe);
+                }
+            }
+        }
+        chunkPipes.remove(world.getName());
+        pipePartCache.removeWorld(world.getName());
+        nonPartCache.removeWorld(world.getName());
+        knownParts.remove(world.getName());
+        invalidInputs.removeWorld(world.getName());
+        invalidFootprints.removeWorld(world.getName());
+    }
+
+    private static boolean isUnloaded(World world, Pipe pipe, long unloadingChunk) {
+        for (long chunkKey : pipe.getChunkKeys()) {
+            if (chunkKey != unloadingChunk && world.isChunkLoaded((int) chunkKey, (int) (chunkKey >> 32))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Remove a pipe from all caches and keep only its record until one of its inputs is used again
+     *
+     * @param pipe the pipe
+     */
+    private void demotePipe(Pipe pipe) {
+        PipeRecord record = PipeRecord.of(pipe);
+        unregisterPipe(pipe);
+        if (record != null) {
+            addStoredPipe(record);
+        }
+    }
+
+    private void indexChunk(Pipe pipe, SimpleLocation location) {
+        indexChunk(pipe, location.getWorldName(), location.getChunkKey());
+    }
+
+    private void indexChunk(Pipe pipe, String worldName, long chunkKey) {
+        chunkPipes.computeIfAbsent(worldName, w -> new LongObjectMap<>())
+                .computeIfAbsent(chunkKey, k -> Collections.newSetFromMap(new WeakHashMap<>()))
+                .add(pipe);
+    }
+
+    private void unindexPipe(Pipe pipe) {
+        if (pipe.getPipeBlocks().isEmpty()) {
+            return;
+        }
+        LongObjectMap<Set<Pipe>> chunks = chunkPipes.get(pipe.getPipeBlocks().iterator().next().getWorldName());
+        if (chunks == null) {
+            return;
+        }
+        for (long chunkKey : pipe.getChunkKeys()) {
+            Set<Pipe> pipes = chunks.get(chunkKey);
+            if (pipes != null && pipes.remove(pipe) && pipes.isEmpty()) {
+                chunks.remove(chunkKey);
+            }
+        }
+    }
+
+    /**
+     * Check whether or not the blocks and parts of a pipe are still in the world
+     * and no glass blocks or parts were added next to it
+     *
+     * @param pipe the pipe
+     * @return <code>true</code> if the pipe still looks like that in the world; <code>false</code> if it changed
+     */
+    private boolean matchesWorld(Pipe pipe) {
+        World world = Bukkit.getWorld(pipe.getPipeBlocks().iterator().next().getWorldName());
+        if (world == null) {
+            return false;
+        }
+        for (SimpleLocation location : pipe.getPipeBlocks()) {
+            if (world.getBlockAt(location.getX(), location.getY(), location.getZ()).getType() != pipe.getType()) {
+                return false;
+            }
+        }
+        for (Map<SimpleLocation, ? extends AbstractPipePart> parts : Arrays.asList(pipe.getInputs(), pipe.getOutputs(), pipe.getChunkLoaders())) {
+            for (AbstractPipePart part : parts.values()) {
+                SimpleLocation location = part.getLocation();
+                if (world.getBlockAt(location.getX(), location.getY(), location.getZ()).getType() != part.getType().getMaterial()) {
+                    return false;
+                }
+            }
+        }
+        return !hasNewNeighbours(world, pipe.getType(), pipe.getPipeBlocks(), pipe.getInputs(), pipe.getOutputs(), pipe.getChunkLoaders());
+    }
+
+    /**
+     * Check whether or not glass blocks or parts that don't belong to a pipe but would be found by
+     * {@link #discover(Block)} are next to one of its blocks. Like there, inputs only belong to the pipe
+     * if they point into one of its blocks, outputs that point into one of its inputs and parts that
+     * are the target of one of its outputs don't belong to it.
+     *
+     * @param world        the world of the pipe
+     * @param type         the glass type of the pipe
+     * @param pipeBlocks   the locations of the pipe's glass blocks
+     * @param inputs       the pipe's inputs
+     * @param outputs      the pipe's outputs
+     * @param chunkLoaders the pipe's chunk loaders
+     * @return <code>true</code> if something was added to the pipe; <code>false</code> if not
+     */
+    private boolean hasNewNeighbours(World world, Material type, Set<SimpleLocation> pipeBlocks, Map<SimpleLocation, PipeInput> inputs,
+                                     Map<SimpleLocation, PipeOutput> outputs, Map<SimpleLocation, ChunkLoader> chunkLoaders) {
+        Set<SimpleLocation> outputTargets = new HashSet<>();
+        for (PipeOutput output : outputs.values()) {
+            outputTargets.add(output.getTargetLocation());
+        }
+        for (SimpleLocation blockLocation : pipeBlocks) {
+            for (BlockFace face : PipesUtil.BLOCK_FACES) {
+                SimpleLocation relative = blockLocation.getRelative(face);
+                if (pipeBlocks.contains(relative) || inputs.containsKey(relative) || outputs.containsKey(relative)
+                        || chunkLoaders.containsKey(relative) || outputTargets.contains(relative)) {
+                    continue;
+                }
+                Block block = world.getBlockAt(relative.getX(), relative.getY(), relative.getZ());
+                Material material = block.getType();
+                if (material == type) {
+                    return true;
+                }
+                if (!isPartMaterial(material)) {
+                    continue;
+                }
+                AbstractPipePart part = getPipePart(block);
+                if (part instanceof PipeInput) {
+                    if (pipeBlocks.contains(((PipeInput) part).getTargetLocation())) {
+                        return true;
+                    }
+                } else if (part instanceof PipeOutput) {
+                    if (!inputs.containsKey(((PipeOutput) part).getTargetLocation())) {
+                        return true;
+                    }
+                } else if (part instanceof ChunkLoader) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     /**
@@ -108,12 +549,26 @@ public class PipeManager {
         return pipeCache;
     }
 
+    /**
+     * returns the total weight of the pipe cache's entries, that is the weight the cache applies to its
+     * limit. Every input entry weighs its share of the number of the pipe's glass blocks and parts.
+     *
+     * @return the weight of the pipe cache
+     */
+    public long getPipeCacheWeight() {
+        long weight = 0;
+        for (Pipe pipe : pipeCache.asMap().values()) {
+            weight += pipe.getCacheWeight();
+        }
+        return weight;
+    }
+
     /**
      * returns the cache for blocks that can only belong to a single pipe (and aren't inputs)
      *
      * @return the single cache
      */
-    public Map<SimpleLocation, Pipe> getSingleCache() {
+    public LocationMap<Pipe> getSingleCache() {
         return singleCache;
     }
 
@@ -122,7 +577,7 @@ public class PipeManager {
      *
      * @return the multi cache
      */
-    public Map<SimpleLocation, Set<Pipe>> getMultiCache() {
+    public LocationMap<Set<Pipe>> getMultiCache() {
         return multiCache;
     }
 
@@ -131,7 +586,7 @@ public class PipeManager {
      *
      * @return the pipe part cache
      */
-    public Map<SimpleLocation, AbstractPipePart> getPipePartCache() {
+    public LocationMap<AbstractPipePart> getPipePartCache() {
         return pipePartCache;
     }
 
@@ -156,26 +611,306 @@ public class PipeManager {
      * @throws ChunkNotLoadedException When the pipe reaches into a chunk that is not loaded
      * @throws PipeTooLongException When the pipe is too long
      * @throws TooManyOutputsException when the pipe has too many outputs
+     * @see #discoverByInput(SimpleLocation)
      */
     public Pipe getPipeByInput(SimpleLocation location) throws ChunkNotLoadedException, TooManyOutputsException, PipeTooLongException {
-        Pipe pipe = pipeCache.getIfPresent(location);
-        if (pipe == null) {
-            Block block = location.getBlock();
+        return discoverByInput(location).getPipeOrThrow();
+    }
+
+    /**
+     * Get the pipe by an input at a location. This will only lookup in the input cache and no other one.
+     * If none is found it will try to calculate the pipe that starts at that position. Inputs whose pipe
+     * was invalid aren't searched again until a block that the search looked at changes.
+     *
+     * @param location the location the input is at
+     * @return the result, {@link DiscoveryResult#NONE} if there is no pipe at that location
+     */
+    public DiscoveryResult discoverByInput(SimpleLocation location) {
+        Pipe pipe = getCachedPipe(location);
+        if (pipe != null && isIdle(pipe, Bukkit.getCurrentTick(), PipesConfig.getPipeCacheDuration())) {
+            // it wasn't used for too long and might have changed, search it again like a pipe that was removed already
+            unregisterPipe(pipe);
+            pipe = null;
+        }
+        if (pipe != null) {
+            pipe.setLastAccess(Bukkit.getCurrentTick());
+            SimpleLocation unloaded = pipe.getUnloadedLocation(location);
+            return unloaded == null ? DiscoveryResult.found(pipe) : DiscoveryResult.chunkNotLoaded(unloaded);
+        }
+
+        DiscoveryResult invalid = invalidInputs.get(location);
+        if (invalid != null) {
+            return invalid;
+        }
+
+        try {
+            pipe = restorePipe(location);
+        } catch (ChunkNotLoadedException e) {
+            return DiscoveryResult.chunkNotLoaded(e.getAccessedLocation());
+        }
+        if (pipe != null) {
+            return DiscoveryResult.found(pipe);
+        }
+
+        Block block = location.getBlock();
+
+        if (PipesUtil.getPipesItem(block) != PipesItem.PIPE_INPUT) {
+            return DiscoveryResult.NONE;
+        }
+
+        DiscoveryResult result = discover(block);
+        if (result.getPipe() != null) {
+            addPipe(result.getPipe());
+        } else if (result.isInvalid()) {
+            addInvalidInput(location, result);
+        }
+        return result;
+    }
+
+    /**
+     * Remember that the pipe of an input is invalid so that it isn't searched again
+     * until a block in the footprint of the result changes
+     *
+     * @param input  the location of the input
+     * @param result the result of the search
+     */
+    void addInvalidInput(SimpleLocation input, DiscoveryResult result) {
+        removeInvalidInput(input);
+        invalidInputs.put(input, result);
+        invalidFootprints.computeIfAbsent(input, l -> new HashSet<>()).add(input);
+        for (SimpleLocation location : result.getFootprint()) {
+            invalidFootprints.computeIfAbsent(location, l -> new HashSet<>()).add(input);
+        }
+    }
+
+    private void removeInvalidInput(SimpleLocation input) {
+        DiscoveryResult result = invalidInputs.remove(input);
+        if (result == null) {
+            return;
+        }
+        removeInvalidFootprint(input, input);
+        for (SimpleLocation location : result.getFootprint()) {
+            removeInvalidFootprint(location, input);
+        }
+    }
+
+    private void removeInvalidFootprint(SimpleLocation location, SimpleLocation input) {
+        Set<SimpleLocation> inputs = invalidFootprints.get(location);
+        if (inputs != null && inputs.remove(input) && inputs.isEmpty()) {
+            invalidFootprints.remove(location);
+        }
+    }
+
+    /**
+     * returns the reason why the pipe of an input is invalid
+     *
+     * @param location the location of the input
+     * @return the result of the last search or <code>null</code> if the input isn't known to be invalid
+     */
+    public DiscoveryResult getInvalidInput(SimpleLocation location) {
+        return invalidInputs.get(location);
+    }
+
+    /**
+     * Search for the pipe of an input off the main thread if it isn't cached yet.
+     * The input gets scheduled for a transfer again once the pipe was found.
+     *
+     * @param location the location of the input
+     * @return <code>true</code> if the pipe is already known; <code>false</code> if it is searched for
+     */
+    public boolean discoverAsync(SimpleLocation location) {
+        if (pipeCache.getIfPresent(location) != null || storedPipes.containsKey(location) || invalidInputs.containsKey(location)) {
+            return true;
+        }
+        asyncDiscovery.discover(location);
+        return false;
+    }
+
+    /**
+     * Add a stored pipe that gets restored the first time one of its inputs is used
+     *
+     * @param record the stored pipe
+     */
+    public void addStoredPipe(PipeRecord record) {
+        if (record.getInputs().length == 0) {
+            return;
+        }
+        for (long input : record.getInputs()) {
+            storedPipes.put(SimpleLocation.unpack(record.getWorldName(), input), record);
+        }
+        LongObjectMap<Set<PipeRecord>> chunks = chunkRecords.computeIfAbsent(record.getWorldName(), w -> new LongObjectMap<>());
+        for (long chunkKey : record.getChunkKeys()) {
+            chunks.computeIfAbsent(chunkKey, k -> Collections.newSetFromMap(new IdentityHashMap<>())).add(record);
+        }
+    }
+
+    private void removeStoredPipe(PipeRecord record) {
+        for (long input : record.getInputs()) {
+            storedPipes.remove(SimpleLocation.unpack(record.getWorldName(), input), record);
+        }
+        LongObjectMap<Set<PipeRecord>> chunks = chunkRecords.get(record.getWorldName());
+        if (chunks == null) {
+            return;
+        }
+        for (long chunkKey : record.getChunkKeys()) {
+            Set<PipeRecord> records = chunks.get(chunkKey);
+            if (records != null && records.remove(record) && records.isEmpty()) {
+                chunks.remove(chunkKey);
+            }
+        }
+        if (chunks.isEmpty()) {
+            chunkRecords.remove(record.getWorldName());
+        }
+    }
+
+    /**
+     * returns the records of all known pipes, both the cached ones and the stored ones that weren't used yet
+     *
+     * @return the pipe records
+     */
+    public Collection<PipeRecord> getPipeRecords() {
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<PipeRecord> records = new ArrayList<>();
+        for (Pipe cached : pipeCache.asMap().values()) {
+            Pipe pipe = cached.resolve();
+            if (seen.add(pipe)) {
+                PipeRecord record = PipeRecord.of(pipe);
+                if (record != null) {
+                    records.add(record);
+                }
+            }
+        }
+        for (PipeRecord record : storedPipes.values()) {
+            if (seen.add(record)) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Turn a stored pipe back into a pipe without searching for it. The stored layout is checked against the world:
+     * every glass block and part has to still exist and no glass blocks or parts may have been added next to it.
+     *
+     * @param location the location of one of the pipe's inputs
+     * @return the pipe or <code>null</code> if there was no valid stored pipe for that input
+     * @throws ChunkNotLoadedException when one of the stored pipe's chunks isn't loaded
+     */
+    private Pipe restorePipe(SimpleLocation location) throws ChunkNotLoadedException {
+        PipeRecord record = storedPipes.get(location);
+        if (record == null) {
+            return null;
+        }
+        World world = Bukkit.getWorld(record.getWorldName());
+        if (world == null) {
+            return null;
+        }
+
+        for (long[] keys : new long[][]{record.getBlocks(), record.getInputs(), record.getOutputs()}) {
+            for (long key : keys) {
+                SimpleLocation partLocation = SimpleLocation.unpack(record.getWorldName(), key);
+                if (!world.isChunkLoaded(partLocation.getX() >> 4, partLocation.getZ() >> 4)) {
+                    if (record.getChunkLoaders().length > 0) {
+                        // chunk loaders can load the chunks while searching, let the normal search handle that
+                        removeStoredPipe(record);
+                        return null;
+                    }
+                    throw new ChunkNotLoadedException(partLocation);
+                }
+            }
+        }
+        removeStoredPipe(record);
 
-            if (PipesUtil.getPipesItem(block) != PipesItem.PIPE_INPUT) {
+        if (PipesConfig.getMaxPipeLength() > 0 && record.getBlocks().length > PipesConfig.getMaxPipeLength()
+                || PipesConfig.getMaxPipeOutputs() > 0 && record.getOutputs().length > PipesConfig.getMaxPipeOutputs()) {
+            return null;
+        }
+
+        LinkedHashSet<SimpleLocation> pipeBlocks = new LinkedHashSet<>();
+        for (long key : record.getBlocks()) {
+            SimpleLocation blockLocation = SimpleLocation.unpack(record.getWorldName(), key);
+            if (world.getBlockAt(blockLocation.getX(), blockLocation.getY(), blockLocation.getZ()).getType() != record.getType()) {
                 return null;
             }
+            pipeBlocks.add(blockLocation);
+        }
 
-            pipe = isPipe(block);
-            if (pipe != null) {
-                addPipe(pipe);
+        LinkedHashMap<SimpleLocation, PipeInput> inputs = new LinkedHashMap<>();
+        LinkedHashMap<SimpleLocation, PipeOutput> outputs = new LinkedHashMap<>();
+        LinkedHashMap<SimpleLocation, ChunkLoader> chunkLoaders = new LinkedHashMap<>();
+        for (long key : record.getInputs()) {
+            AbstractPipePart part = getStoredPart(world, record, key);
+            if (!(part instanceof PipeInput) || !pipeBlocks.contains(((PipeInput) part).getTargetLocation())) {
+                return null;
             }
-        } else {
-            pipe.checkLoaded(location);
+            inputs.put(part.getLocation(), (PipeInput) part);
+        }
+        for (long key : record.getOutputs()) {
+            AbstractPipePart part = getStoredPart(world, record, key);
+            if (!(part instanceof PipeOutput)) {
+                return null;
+            }
+            outputs.put(part.getLocation(), (PipeOutput) part);
+        }
+        for (long key : record.getChunkLoaders()) {
+            AbstractPipePart part = getStoredPart(world, record, key);
+            if (!(part instanceof ChunkLoader)) {
+                return null;
+            }
+            chunkLoaders.put(part.getLocation(), (ChunkLoader) part);
+        }
+        if (!inputs.containsKey(location) || outputs.isEmpty()) {
+            return null;
         }
+
+        // Check that nothing was added to the pipe while it wasn't loaded
+        if (hasNewNeighbours(world, record.getType(), pipeBlocks, inputs, outputs, chunkLoaders)) {
+            return null;
+        }
+
+        Pipe pipe = new Pipe(inputs, outputs, chunkLoaders, pipeBlocks, record.getType());
+        addPipe(pipe);
         return pipe;
     }
 
+    private AbstractPipePart getStoredPart(World world, PipeRecord record, long key) {
+        SimpleLocation partLocation = SimpleLocation.unpack(record.getWorldName(), key);
+        return getPipePart(world.getBlockAt(partLocation.getX(), partLocation.getY(), partLocation.getZ()));
+    }
+
+    /**
+     * Mark that a pipe block or part was placed, broken or moved in the world
+     */
+    public void markBlockChange() {
+        blockChanges++;
+    }
+
+    /**
+     * Mark that a pipe block or part was placed, broken or moved in the world at a specific location.
+     * Inputs that were invalid because of that block get searched again on their next transfer.
+     *
+     * @param block the block that changed
+     */
+    public void markBlockChange(Block block) {
+        markBlockChange();
+        Set<SimpleLocation> inputs = invalidFootprints.get(block.getWorld().getName(), block.getX(), block.getY(), block.getZ());
+        if (inputs != null) {
+            for (SimpleLocation input : new ArrayList<>(inputs)) {
+                removeInvalidInput(input);
+                ItemMoveScheduler.getInstance().wakeBlocked(input);
+            }
+        }
+    }
+
+    /**
+     * returns the number of changes to pipe blocks and parts in the world
+     *
+     * @return the number of changes
+     */
+    public int getBlockChanges() {
+        return blockChanges;
+    }
+
     /**
      * Get the pipe that is at that location, returns an empty set instead of throwing an exception
      *
@@ -195,9 +930,9 @@ public class PipeManager {
      */
     public Set<Pipe> getPipesSafe(SimpleLocation location, boolean cacheOnly) {
         if (cacheOnly) {
-            Pipe pipe = pipeCache.getIfPresent(location);
+            Pipe pipe = getCachedPipe(location);
             if (pipe == null) {
-                pipe = singleCache.get(location);
+                pipe = getSinglePipe(location);
             }
             if (pipe != null) {
                 return Collections.singleton(pipe);
@@ -294,27 +1029,36 @@ public class PipeManager {
      * Add all the pipes locations to the cache
      * @param pipe The pipe
      */
-    private void addPipe(Pipe pipe) {
+    void addPipe(Pipe pipe) {
         if (pipe == null) {
             return;
         }
+        pipe.setLastAccess(Bukkit.getCurrentTick());
+        pipe.updateCacheWeight();
         for (PipeInput input : pipe.getInputs().values()) {
+            indexChunk(pipe, input.getLocation());
             pipeCache.put(input.getLocation(), pipe);
             pipePartCache.put(input.getLocation(), input);
+            addKnownPart(input.getLocation());
             if (!input.getHolder().getInventory().isEmpty()) {
                 ItemMoveScheduler.getInstance().add(input.getLocation());
             }
         }
         for (SimpleLocation location : pipe.getPipeBlocks()) {
+            indexChunk(pipe, location);
             singleCache.put(location, pipe);
         }
         for (PipeOutput output : pipe.getOutputs().values()) {
+            indexChunk(pipe, output.getLocation());
+            indexChunk(pipe, output.getTargetLocation());
             addToMultiCache(output.getLocation(), pipe);
             pipePartCache.put(output.getLocation(), output);
+            addKnownPart(output.getLocation());
         }
         for (ChunkLoader chunkLoader : pipe.getChunkLoaders().values()) {
             addToMultiCache(chunkLoader.getLocation(), pipe);
             pipePartCache.put(chunkLoader.getLocation(), chunkLoader);
+            addKnownPart(chunkLoader.getLocation());
         }
     }
 
@@ -328,21 +1072,28 @@ public class PipeManager {
     public void addPart(Pipe pipe, AbstractPipePart pipePart) throws TooManyOutputsException {
         if (pipePart instanceof PipeInput) {
             pipe.getInputs().put(pipePart.getLocation(), (PipeInput) pipePart);
-            for (PipeInput input : pipe.getInputs().values()) {
-                pipeCache.put(input.getLocation(), pipe);
-            }
+            indexChunk(pipe, pipePart.getLocation());
         } else if (pipePart instanceof PipeOutput) {
             if (PipesConfig.getMaxPipeOutputs() > 0 && pipe.getOutputs().size() + 1 >= PipesConfig.getMaxPipeOutputs()) {
                 removePipe(pipe);
                 throw new TooManyOutputsException(pipePart.getLocation());
             }
             pipe.getOutputs().put(pipePart.getLocation(), (PipeOutput) pipePart);
+            indexChunk(pipe, pipePart.getLocation());
+            indexChunk(pipe, ((PipeOutput) pipePart).getTargetLocation());
             addToMultiCache(pipePart.getLocation(), pipe);
         } else if (pipePart instanceof ChunkLoader) {
             pipe.getChunkLoaders().put(pipePart.getLocation(), (ChunkLoader) pipePart);
             addToMultiCache(pipePart.getLocation(), pipe);
         }
+        pipe.markChanged();
         pipePartCache.put(pipePart.getLocation(), pipePart);
+        if (pipePart instanceof PipeInput) {
+            // the new input needs its own entry
+            cachePipe(pipe);
+        } else {
+            reweighPipe(pipe);
+        }
     }
 
     /**
@@ -366,25 +1117,81 @@ public class PipeManager {
             pipe.getChunkLoaders().remove(pipePart.getLocation());
             removeFromMultiCache(pipePart.getLocation(), pipe);
         }
+        pipe.markChanged();
         pipePartCache.remove(pipePart.getLocation(), pipePart);
+        reweighPipe(pipe);
+    }
+
+    /**
+     * Put all inputs of a pipe into the pipe cache with the current weight of the pipe
+     *
+     * @param pipe the pipe
+     */
+    private void cachePipe(Pipe pipe) {
+        pipe.updateCacheWeight();
+        for (SimpleLocation input : pipe.getInputs().keySet()) {
+            pipeCache.put(input, pipe);
+        }
+    }
+
+    /**
+     * Put the cached inputs of a pipe into the pipe cache again if the weight of the pipe changed.
+     * The cache only weighs entries when they are put, inputs that aren't cached anymore stay removed.
+     *
+     * @param pipe the pipe whose blocks or parts changed
+     */
+    private void reweighPipe(Pipe pipe) {
+        if (PipesConfig.getPipeCacheWeight() > 0 && pipe.updateCacheWeight()) {
+            for (SimpleLocation input : pipe.getInputs().keySet()) {
+                pipeCache.asMap().replace(input, pipe);
+            }
+        }
     }
 
     private void addToMultiCache(SimpleLocation location, Pipe pipe) {
-        multiCache.putIfAbsent(location, Collections.newSetFromMap(new WeakHashMap<>()));
-        multiCache.get(location).add(pipe);
+        multiCache.computeIfAbsent(location, l -> Collections.newSetFromMap(new WeakHashMap<>())).add(pipe);
     }
 
     private void removeFromMultiCache(SimpleLocation location, Pipe pipe) {
         Collection<Pipe> pipes = multiCache.get(location);
-        if (pipes != null) {
-            if (pipes.size() == 1) {
-                multiCache.remove(location);
-            } else {
-                pipes.remove(pipe);
-            }
+        if (pipes != null && pipes.removeIf(p -> p.resolve() == pipe) && pipes.isEmpty()) {
+            multiCache.remove(location);
+        }
+    }
+
+    private void removeFromSingleCache(SimpleLocation location, Pipe pipe) {
+        Pipe cached = singleCache.get(location);
+        if (cached != null && cached.resolve() == pipe) {
+            singleCache.remove(location);
+        }
+    }
+
+    /**
+     * Get the pipe of an input from the pipe cache. If the cached pipe was merged into a different one
+     * the entry gets updated to that pipe.
+     *
+     * @param location the location of the input
+     * @return the pipe or <code>null</code> if it isn't cached
+     */
+    public Pipe getCachedPipe(SimpleLocation location) {
+        Pipe pipe = pipeCache.getIfPresent(location);
+        if (pipe != null && pipe.isMerged()) {
+            pipe = pipe.resolve();
+            pipeCache.put(location, pipe);
+        }
+        return pipe;
+    }
+
+    private Pipe getSinglePipe(SimpleLocation location) {
+        Pipe pipe = singleCache.get(location);
+        if (pipe != null && pipe.isMerged()) {
+            pipe = pipe.resolve();
+            singleCache.put(location, pipe);
         }
+        return pipe;
     }
 
+
     /**
      * Add a block to a pipe while checking settings and caching the location
      *
@@ -399,54 +1206,339 @@ public class PipeManager {
             throw new PipeTooLongException(location);
         }
         pipe.getPipeBlocks().add(location);
+        pipe.markChanged();
+        indexChunk(pipe, location);
         singleCache.put(location, pipe);
+        reweighPipe(pipe);
     }
 
     /**
-     * Merge multiple pipes into one
+     * Merge multiple pipes into one. The smaller pipes are merged into the largest one, their blocks and parts
+     * are moved but their entries in the single cache and the pipe cache are only updated when they are looked up.
      * @param pipes The pipes to merge
      * @return the merged Pipe or <code>null</code> if they couldn't be merged
      * @throws PipeTooLongException When the pipe is too long
      * @throws TooManyOutputsException when the pipe has too many outputs
      */
     public Pipe mergePipes(Set<Pipe> pipes) throws TooManyOutputsException, PipeTooLongException {
+        Set<Pipe> roots = Collections.newSetFromMap(new IdentityHashMap<>());
         Material type = null;
+        Pipe largest = null;
+        int blocks = 0;
+        int outputs = 0;
         for (Pipe pipe : pipes) {
+            pipe = pipe.resolve();
+            if (!roots.add(pipe)) {
+                continue;
+            }
             if (type == null) {
                 type = pipe.getType();
             }
             if (pipe.getType() != type) {
                 return null;
             }
+            blocks += pipe.getPipeBlocks().size();
+            outputs += pipe.getOutputs().size();
+            if (largest == null || pipe.getWeight() > largest.getWeight()) {
+                largest = pipe;
+            }
+        }
+        if (largest == null) {
+            return null;
         }
 
-        LinkedHashMap<SimpleLocation, PipeInput> inputs = new LinkedHashMap<>();
-        LinkedHashMap<SimpleLocation, PipeOutput> outputs = new LinkedHashMap<>();
-        LinkedHashMap<SimpleLocation, ChunkLoader> chunkLoaders = new LinkedHashMap<>();
-        LinkedHashSet<SimpleLocation> blocks = new LinkedHashSet<>();
+        if (PipesConfig.getMaxPipeLength() > 0 && blocks >= PipesConfig.getMaxPipeLength()) {
+            roots.forEach(this::removePipe);
+            throw new PipeTooLongException(largest.getPipeBlocks().iterator().next());
+        }
 
-        pipes.forEach(pipe -> {
-            removePipe(pipe);
-            inputs.putAll(pipe.getInputs());
-            outputs.putAll(pipe.getOutputs());
-            chunkLoaders.putAll(pipe.getChunkLoaders());
-            blocks.addAll(pipe.getPipeBlocks());
-        });
+        if (PipesConfig.getMaxPipeOutputs() > 0 && outputs + 1 >= PipesConfig.getMaxPipeOutputs()) {
+            roots.forEach(this::removePipe);
+            throw new TooManyOutputsException(largest.getOutputs().keySet().iterator().next());
+        }
+
+        for (Pipe pipe : roots) {
+            if (pipe == largest) {
+                continue;
+            }
+            // the multi cache and the chunk index only hold their pipes weakly, they need to know the merged pipe
+            for (SimpleLocation location : pipe.getOutputs().keySet()) {
+                removeFromMultiCache(location, pipe);
+                addToMultiCache(location, largest);
+            }
+            for (SimpleLocation location : pipe.getChunkLoaders().keySet()) {
+                removeFromMultiCache(location, pipe);
+                addToMultiCache(location, largest);
+            }
+            String worldName = pipe.getPipeBlocks().iterator().next().getWorldName();
+            for (long chunkKey : pipe.getChunkKeys()) {
+                indexChunk(largest, worldName, chunkKey);
+            }
+            largest.absorb(pipe);
+        }
+        reweighPipe(largest);
+        return largest;
+    }
+
+    /**
+     * Connect a newly placed glass block to the cached pipes next to it. This extends an adjacent pipe in place
+     * (or merges multiple ones if the block bridges them) and attaches all the parts around the block.
+     * @param block The block that was placed
+     * @return the pipe that the block is now part of or <code>null</code> if it couldn't be connected
+     *          to a cached pipe and needs to be discovered from scratch
+     * @throws PipeTooLongException When the pipe is too long
+     * @throws TooManyOutputsException when the pipe has too many outputs
+     */
+    public Pipe connectBlock(Block block) throws TooManyOutputsException, PipeTooLongException {
+        Material type = block.getType();
+        SimpleLocation location = new SimpleLocation(block.getLocation());
+
+        Set<Pipe> found = new LinkedHashSet<>();
+        boolean unknownNeighbour = false;
+        for (BlockFace face : PipesUtil.BLOCK_FACES) {
+            if (block.getRelative(face).getType() == type) {
+                Pipe pipe = getSinglePipe(location.getRelative(face));
+                if (pipe != null) {
+                    found.add(pipe);
+                } else {
+                    unknownNeighbour = true;
+                }
+            }
+        }
 
-        if (PipesConfig.getMaxPipeLength() > 0 &&blocks.size() >= PipesConfig.getMaxPipeLength()) {
-            throw new PipeTooLongException(blocks.iterator().next());
+        if (found.isEmpty()) {
+            return null;
         }
 
-        if (PipesConfig.getMaxPipeOutputs() > 0 && outputs.size() + 1 >= PipesConfig.getMaxPipeOutputs()) {
-            throw new TooManyOutputsException(outputs.keySet().iterator().next());
+        Pipe pipe = found.size() > 1 ? mergePipes(found) : found.iterator().next();
+        if (pipe == null) {
+            return null;
         }
 
-        Pipe pipe = new Pipe(inputs, outputs, chunkLoaders, blocks, type);
+        if (unknownNeighbour) {
+            // The block connects glass which we don't know anything about, the pipe needs to be discovered again
+            removePipe(pipe);
+            return null;
+        }
 
-        addPipe(pipe);
+        addBlock(pipe, block);
+        for (BlockFace face : PipesUtil.BLOCK_FACES) {
+            AbstractPipePart part = getPipePart(block.getRelative(face));
+            if (part instanceof PipeInput) {
+                if (location.equals(((PipeInput) part).getTargetLocation()) && !pipe.getInputs().containsKey(part.getLocation())) {
+                    addPart(pipe, part);
+                    if (!((PipeInput) part).getHolder().getInventory().isEmpty()) {
+                        ItemMoveScheduler.getInstance().add(part.getLocation());
+                    }
+                }
+            } else if (part instanceof PipeOutput) {
+                if (!pipe.getOutputs().containsKey(part.getLocation())
+                        && !pipe.getInputs().containsKey(((PipeOutput) part).getTargetLocation())) {
+                    addPart(pipe, part);
+                }
+            } else if (part instanceof ChunkLoader) {
+                if (!pipe.getChunkLoaders().containsKey(part.getLocation())) {
+                    addPart(pipe, part);
+                }
+            }
+        }
         return pipe;
     }
 
+    /**
+     * Remove a glass block from a pipe. If the block was the only connection between parts of the pipe then the
+     * pipe gets split into its remaining connected components. This only has to search through the smaller parts
+     * that are cut off, the biggest part keeps the original pipe object.
+     * @param pipe      The pipe to remove the block from
+     * @param location  The location of the removed block
+     */
+    public void removeBlock(Pipe pipe, SimpleLocation location) {
+        if (!pipe.getPipeBlocks().remove(location)) {
+            return;
+        }
+        pipe.markChanged();
+        removeFromSingleCache(location, pipe);
+
+        List<SimpleLocation> starts = new ArrayList<>();
+        for (BlockFace face : PipesUtil.BLOCK_FACES) {
+            SimpleLocation relative = location.getRelative(face);
+            if (pipe.getPipeBlocks().contains(relative)) {
+                starts.add(relative);
+            }
+        }
+
+        for (Set<SimpleLocation> component : findCutOffComponents(pipe.getPipeBlocks(), starts)) {
+            pipe.getPipeBlocks().removeAll(component);
+            for (SimpleLocation blockLocation : component) {
+                removeFromSingleCache(blockLocation, pipe);
+            }
+
+            LinkedHashMap<SimpleLocation, PipeInput> inputs = new LinkedHashMap<>();
+            LinkedHashMap<SimpleLocation, PipeOutput> outputs = new LinkedHashMap<>();
+            LinkedHashMap<SimpleLocation, ChunkLoader> chunkLoaders = new LinkedHashMap<>();
+            for (PipeInput input : pipe.getInputs().values()) {
+                if (component.contains(input.getTargetLocation())) {
+                    inputs.put(input.getLocation(), input);
+                }
+            }
+            for (PipeOutput output : pipe.getOutputs().values()) {
+                if (isAdjacent(output.getLocation(), component) && !inputs.containsKey(output.getTargetLocation())) {
+                    outputs.put(output.getLocation(), output);
+                }
+            }
+            for (ChunkLoader chunkLoader : pipe.getChunkLoaders().values()) {
+                if (isAdjacent(chunkLoader.getLocation(), component)) {
+                    chunkLoaders.put(chunkLoader.getLocation(), chunkLoader);
+                }
+            }
+
+            if (!inputs.isEmpty() && !outputs.isEmpty()) {
+                // move the inputs before the new pipe takes over their cache entries, detaching them
+                // from the old pipe afterwards would invalidate the entries of the new pipe
+                pipe.getInputs().keySet().removeAll(inputs.keySet());
+                addPipe(new Pipe(inputs, outputs, chunkLoaders, new LinkedHashSet<>(component), pipe.getType()));
+            }
+        }
+
+        detachParts(pipe);
+        reweighPipe(pipe);
+    }
+
+    /**
+     * Remove all parts from a pipe that aren't connected to its blocks anymore.
+     * Removes the whole pipe if it has no inputs or outputs left.
+     * @param pipe The pipe
+     */
+    private void detachParts(Pipe pipe) {
+        for (Iterator<PipeInput> it = pipe.getInputs().values().iterator(); it.hasNext();) {
+            PipeInput input = it.next();
+            if (!pipe.getPipeBlocks().contains(input.getTargetLocation())) {
+                it.remove();
+                pipeCache.invalidate(input.getLocation());
+                pipePartCache.remove(input.getLocation(), input);
+            }
+        }
+        for (Iterator<PipeOutput> it = pipe.getOutputs().values().iterator(); it.hasNext();) {
+            PipeOutput output = it.next();
+            if (!isAdjacent(output.getLocation(), pipe.getPipeBlocks())) {
+                it.remove();
+                removeFromMultiCache(output.getLocation(), pipe);
+            }
+        }
+        for (Iterator<ChunkLoader> it = pipe.getChunkLoaders().values().iterator(); it.hasNext();) {
+            ChunkLoader chunkLoader = it.next();
+            if (!isAdjacent(chunkLoader.getLocation(), pipe.getPipeBlocks())) {
+                it.remove();
+                removeFromMultiCache(chunkLoader.getLocation(), pipe);
+            }
+        }
+
+        pipe.markChanged();
+
+        if (pipe.getInputs().isEmpty() || pipe.getOutputs().isEmpty() || pipe.getPipeBlocks().isEmpty()) {
+            removePipe(pipe);
+            unregisterPipe(pipe);
+        }
+    }
+
+    /**
+     * Check whether or not a location is directly next to one of the locations in a set
+     * @param location  The location
+     * @param locations The locations to check
+     * @return <code>true</code> if one of the six neighbours is in the set
+     */
+    private static boolean isAdjacent(SimpleLocation location, Set<SimpleLocation> locations) {
+        for (BlockFace face : PipesUtil.BLOCK_FACES) {
+            if (locations.contains(location.getRelative(face))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find the components of a set of blocks that got cut off after a block was removed. This runs one search from
+     * each of the removed block's neighbours in lockstep and joins searches when they meet. As soon as at most one
+     * search is still running all the finished ones are complete, separated components. This way the work is
+     * proportional to the size of the cut off parts and not to the whole pipe.
+     * @param blocks    All remaining blocks
+     * @param starts    The remaining neighbours of the removed block
+     * @return The components that got separated, without the biggest/unfinished one; empty if nothing was cut off
+     */
+    static List<Set<SimpleLocation>> findCutOffComponents(Set<SimpleLocation> blocks, List<SimpleLocation> starts) {
+        if (starts.size() < 2) {
+            return Collections.emptyList();
+        }
+
+        int[] parent = new int[starts.size()];
+        List<Queue<SimpleLocation>> queues = new ArrayList<>();
+        Map<SimpleLocation, Integer> owner = new HashMap<>();
+        for (int i = 0; i < starts.size(); i++) {
+            parent[i] = i;
+            Queue<SimpleLocation> queue = new ArrayDeque<>();
+            queue.add(starts.get(i));
+            queues.add(queue);
+            owner.put(starts.get(i), i);
+        }
+
+        while (true) {
+            for (int i = 0; i < queues.size(); i++) {
+                SimpleLocation current = queues.get(i).poll();
+                if (current == null) {
+                    continue;
+                }
+                for (BlockFace face : PipesUtil.BLOCK_FACES) {
+                    SimpleLocation relative = current.getRelative(face);
+                    if (blocks.contains(relative)) {
+                        Integer other = owner.putIfAbsent(relative, i);
+                        if (other == null) {
+                            queues.get(i).add(relative);
+                        } else {
+                            parent[find(parent, other)] = find(parent, i);
+                        }
+                    }
+                }
+            }
+
+            Set<Integer> running = new HashSet<>();
+            Set<Integer> groups = new HashSet<>();
+            for (int i = 0; i < queues.size(); i++) {
+                int group = find(parent, i);
+                groups.add(group);
+                if (!queues.get(i).isEmpty()) {
+                    running.add(group);
+                }
+            }
+            if (groups.size() < 2) {
+                return Collections.emptyList();
+            }
+            if (running.size() < 2) {
+                Map<Integer, Set<SimpleLocation>> components = new HashMap<>();
+                for (Map.Entry<SimpleLocation, Integer> entry : owner.entrySet()) {
+                    int group = find(parent, entry.getValue());
+                    if (!running.contains(group)) {
+                        components.computeIfAbsent(group, g -> new LinkedHashSet<>()).add(entry.getKey());
+                    }
+                }
+                List<Set<SimpleLocation>> cutOff = new ArrayList<>(components.values());
+                if (running.isEmpty()) {
+                    // Everything was searched, keep the biggest one in the original pipe
+                    cutOff.sort(Comparator.comparingInt(Set::size));
+                    cutOff.remove(cutOff.size() - 1);
+                }
+                return cutOff;
+            }
+        }
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
     /**
      * checks if the block is part of a pipe.
      *
@@ -455,8 +1547,19 @@ public class PipeManager {
      * @throws ChunkNotLoadedException When the pipe reaches into a chunk that is not loaded
      * @throws PipeTooLongException When the pipe is too long
      * @throws TooManyOutputsException when the pipe has too many outputs
+     * @see #discover(Block)
      */
     public Pipe isPipe(Block startingPoint) throws ChunkNotLoadedException, TooManyOutputsException, PipeTooLongException {
+        return discover(startingPoint).getPipeOrThrow();
+    }
+
+    /**
+     * Search for the pipe that a block is part of. This doesn't use or fill any cache.
+     *
+     * @param startingPoint a block
+     * @return the result, {@link DiscoveryResult#NONE} if the block isn't part of a pipe
+     */
+    public DiscoveryResult discover(Block startingPoint) {
 
         Queue<SimpleLocation> queue = new LinkedList<>();
         Set<SimpleLocation> found = new LinkedHashSet<>();
@@ -481,7 +1584,7 @@ public class PipeManager {
             if (!found.contains(location)) {
                 if (!world.isChunkLoaded(location.getX() >> 4, location.getZ() >> 4)
                         && (chunkLoaders.size() == 0)) {
-                    throw new ChunkNotLoadedException(location);
+                    return DiscoveryResult.chunkNotLoaded(location);
                 }
                 Block block = world.getBlockAt(location.getX(), location.getY(), location.getZ());
                 if (MaterialTags.STAINED_GLASS.isTagged(block)) {
@@ -490,7 +1593,8 @@ public class PipeManager {
                     }
                     if (block.getType() == type) {
                         if (PipesConfig.getMaxPipeLength() > 0 && pipeBlocks.size() >= PipesConfig.getMaxPipeLength()) {
-                            throw new PipeTooLongException(location);
+                            found.add(location);
+                            return DiscoveryResult.tooLong(location, found);
                         }
                         pipeBlocks.add(location);
                         found.add(location);
@@ -517,7 +1621,8 @@ public class PipeManager {
                             case PIPE_OUTPUT:
                                 PipeOutput pipeOutput = (PipeOutput) pipesPart;
                                 if (PipesConfig.getMaxPipeOutputs() > 0 && outputs.size() >= PipesConfig.getMaxPipeOutputs()) {
-                                    throw new TooManyOutputsException(location);
+                                    found.add(location);
+                                    return DiscoveryResult.tooManyOutputs(location, found);
                                 }
                                 outputs.put(pipeOutput.getLocation(), pipeOutput);
                                 if (found.isEmpty()) {
@@ -559,9 +1664,9 @@ public class PipeManager {
         }
 
         if ((outputs.size() > 0) && (inputs.size() > 0) && pipeBlocks.size() > 0) {
-            return new Pipe(inputs, outputs, chunkLoaders, pipeBlocks, type);
+            return DiscoveryResult.found(new Pipe(inputs, outputs, chunkLoaders, pipeBlocks, type));
         }
-        return null;
+        return DiscoveryResult.NONE;
     }
 
     /**
@@ -581,7 +1686,10 @@ public class PipeManager {
             state.update();
         }
         AbstractPipePart part = PipesUtil.convertToPipePart(state, item);
-        pipePartCache.put(new SimpleLocation(block.getLocation()), part);
+        SimpleLocation location = new SimpleLocation(block.getLocation());
+        nonPartCache.remove(location);
+        pipePartCache.put(location, part);
+        addKnownPart(location);
         return part;
     }
 
@@ -591,14 +1699,24 @@ public class PipeManager {
      * @return the pipespart or null if the block isn't one
      */
     public AbstractPipePart getPipePart(Block block) {
+        Material material = block.getType();
+        if (!isPartMaterial(material)) {
+            return null;
+        }
+        String worldName = block.getWorld().getName();
+        AbstractPipePart part = getCachedPipePart(worldName, block.getX(), block.getY(), block.getZ(), material);
+        if (part != null || nonPartCache.containsKey(worldName, block.getX(), block.getY(), block.getZ())) {
+            return part;
+        }
         PipesItem type = PipesUtil.getPipesItem(block);
         if (type == null) {
+            addNonPart(new SimpleLocation(block.getLocation()));
             return null;
         }
-        return pipePartCache.getOrDefault(
-                new SimpleLocation(block.getLocation()),
-                PipesUtil.convertToPipePart(block.getState(false), type)
-        );
+        part = PipesUtil.convertToPipePart(block.getState(false), type);
+        pipePartCache.put(part.getLocation(), part);
+        addKnownPart(part.getLocation());
+        return part;
     }
 
     /**
@@ -607,14 +1725,160 @@ public class PipeManager {
      * @return the pipespart or null if the block isn't one
      */
     public AbstractPipePart getPipePart(BlockState state) {
+        Material material = state.getType();
+        if (!isPartMaterial(material)) {
+            return null;
+        }
+        String worldName = state.getWorld().getName();
+        AbstractPipePart part = getCachedPipePart(worldName, state.getX(), state.getY(), state.getZ(), material);
+        if (part != null || nonPartCache.containsKey(worldName, state.getX(), state.getY(), state.getZ())) {
+            return part;
+        }
         PipesItem type = PipesUtil.getPipesItem(state);
         if (type == null) {
+            addNonPart(new SimpleLocation(state.getLocation()));
+            return null;
+        }
+        part = PipesUtil.convertToPipePart(state, type);
+        pipePartCache.put(part.getLocation(), part);
+        addKnownPart(part.getLocation());
+        return part;
+    }
+
+    /**
+     * Get a cached part if it still has the material of the block at its location, drops it from the cache if not
+     */
+    private AbstractPipePart getCachedPipePart(String worldName, int x, int y, int z, Material material) {
+        AbstractPipePart part = pipePartCache.get(worldName, x, y, z);
+        if (part != null && part.getType().getMaterial() != material) {
+            // the block was replaced without us noticing (e.g. by an explosion)
+            pipePartCache.remove(part.getLocation(), part);
             return null;
         }
-        return pipePartCache.getOrDefault(
-                new SimpleLocation(state.getLocation()),
-                PipesUtil.convertToPipePart(state, type)
-        );
+        return part;
+    }
+
+    private static boolean isPartMaterial(Material material) {
+        return material == PipesItem.PIPE_INPUT.getMaterial()
+                || material == PipesItem.PIPE_OUTPUT.getMaterial()
+                || material == PipesItem.CHUNK_LOADER.getMaterial();
+    }
+
+    private void addNonPart(SimpleLocation location) {
+        if (nonPartCache.size() >= NON_PART_CACHE_SIZE) {
+            nonPartCache.clear();
+        }
+        nonPartCache.put(location, Boolean.TRUE);
+    }
+
+    /**
+     * Forget everything that is cached about a single block that isn't part of a pipe.
+     * Needs to be called when a block gets placed or broken.
+     * @param block the block
+     */
+    public void forgetBlock(Block block) {
+        if (!isPartMaterial(block.getType())) {
+            return;
+        }
+        SimpleLocation location = new SimpleLocation(block.getLocation());
+        nonPartCache.remove(location);
+        LongObjectMap<LongHashSet> worldParts = knownParts.get(location.getWorldName());
+        if (worldParts != null) {
+            LongHashSet chunkParts = worldParts.get(location.getChunkKey());
+            if (chunkParts != null) {
+                chunkParts.remove(location.getKey());
+            }
+        }
+        AbstractPipePart part = pipePartCache.get(location);
+        if (part != null && pipeCache.getIfPresent(location) == null && !multiCache.containsKey(location)) {
+            pipePartCache.remove(location, part);
+        }
+    }
+
+    /**
+     * Add a part to the known part locations of its chunk. Chunks that weren't scanned yet are skipped,
+     * the part will be found when they are.
+     * @param location the location of the part
+     */
+    private void addKnownPart(SimpleLocation location) {
+        LongObjectMap<LongHashSet> worldParts = knownParts.get(location.getWorldName());
+        if (worldParts == null) {
+            return;
+        }
+        long chunkKey = location.getChunkKey();
+        LongHashSet chunkParts = worldParts.get(chunkKey);
+        if (chunkParts == NO_PARTS) {
+            chunkParts = new LongHashSet();
+            worldParts.put(chunkKey, chunkParts);
+        }
+        if (chunkParts != null) {
+            chunkParts.add(location.getKey());
+        }
+    }
+
+    /**
+     * Check whether or not a block might be a pipe part. This is a lookup in the known part locations
+     * and can be used to quickly reject blocks before reading their data. The block's chunk gets scanned
+     * the first time that it is checked, blocks in unloaded chunks are never a known part.
+     * @param world the world of the block
+     * @param x     the x coordinate
+     * @param y     the y coordinate
+     * @param z     the z coordinate
+     * @return <code>false</code> if the block is definitely no pipe part; <code>true</code> if it might be one
+     */
+    public boolean isKnownPart(World world, int x, int y, int z) {
+        LongObjectMap<LongHashSet> worldParts = knownParts.get(world.getName());
+        LongHashSet chunkParts = worldParts != null ? worldParts.get(SimpleLocation.chunkKey(x >> 4, z >> 4)) : null;
+        if (chunkParts == null) {
+            if (!world.isChunkLoaded(x >> 4, z >> 4)) {
+                return false;
+            }
+            chunkParts = scanChunk(world.getChunkAt(x >> 4, z >> 4));
+        }
+        return chunkParts.contains(SimpleLocation.pack(x, y, z));
+    }
+
+    /**
+     * Check whether or not a block might be a pipe part
+     * @param block the block
+     * @return <code>false</code> if the block is definitely no pipe part; <code>true</code> if it might be one
+     * @see #isKnownPart(World, int, int, int)
+     */
+    public boolean isKnownPart(Block block) {
+        return isKnownPart(block.getWorld(), block.getX(), block.getY(), block.getZ());
+    }
+
+    /**
+     * Check whether or not the block of an inventory might be a pipe part
+     * @param inventory the inventory
+     * @return <code>false</code> if the inventory definitely doesn't belong to a pipe part; <code>true</code> if it might
+     * @see #isKnownPart(World, int, int, int)
+     */
+    public boolean isKnownPart(Inventory inventory) {
+        Location location = inventory.getLocation();
+        return location != null && location.getWorld() != null
+                && isKnownPart(location.getWorld(), location.getBlockX(), location.getBlockY(), location.getBlockZ());
+    }
+
+    /**
+     * Remember the locations of all pipe parts in a chunk. Only tile entities with the material of a part
+     * are looked at and no snapshots of them are created.
+     * @param chunk the chunk
+     * @return the known part locations of the chunk
+     */
+    private LongHashSet scanChunk(Chunk chunk) {
+        LongHashSet chunkParts = NO_PARTS;
+        for (BlockState state : chunk.getTileEntities(block -> isPartMaterial(block.getType()), false)) {
+            if (PipesUtil.getPipesItem(state) != null) {
+                if (chunkParts == NO_PARTS) {
+                    chunkParts = new LongHashSet();
+                }
+                chunkParts.add(SimpleLocation.pack(state.getX(), state.getY(), state.getZ()));
+            }
+        }
+        knownParts.computeIfAbsent(chunk.getWorld().getName(), w -> new LongObjectMap<>())
+                .put(SimpleLocation.chunkKey(chunk.getX(), chunk.getZ()), chunkParts);
+        return chunkParts;
     }
 
     /**
@@ -626,6 +1890,54 @@ public class PipeManager {
         return pipePartCache.get(location);
     }
 
+    /**
+     * Mark the compiled filter of the output at a location as outdated and wake up the inputs that were blocked by it
+     * @param location The location of the output
+     */
+    public void invalidateFilter(SimpleLocation location) {
+        ItemMoveScheduler.getInstance().wakeBlocked(location);
+        AbstractPipePart part = pipePartCache.get(location);
+        if (part instanceof PipeOutput) {
+            ((PipeOutput) part).invalidateFilter();
+        }
+        Set<Pipe> pipes = multiCache.get(location);
+        if (pipes != null) {
+            for (Pipe pipe : pipes) {
+                PipeOutput output = pipe.resolve().getOutputs().get(location);
+                if (output != null) {
+                    output.invalidateFilter();
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove all the pipe's locations from the caches
+     * @param pipe The pipe
+     */
+    private void unregisterPipe(Pipe pipe) {
+        unindexPipe(pipe);
+        for (PipeInput input : pipe.getInputs().values()) {
+            pipeCache.invalidate(input.getLocation());
+            pipePartCache.remove(input.getLocation(), input);
+        }
+        for (SimpleLocation location : pipe.getPipeBlocks()) {
+            removeFromSingleCache(location, pipe);
+        }
+        for (PipeOutput output : pipe.getOutputs().values()) {
+            removeFromMultiCache(output.getLocation(), pipe);
+            if (multiCache.getOrDefault(output.getLocation(), Collections.emptySet()).isEmpty()) {
+                pipePartCache.remove(output.getLocation(), output);
+            }
+        }
+        for (ChunkLoader loader : pipe.getChunkLoaders().values()) {
+            removeFromMultiCache(loader.getLocation(), pipe);
+            if (multiCache.getOrDefault(loader.getLocation(), Collections.emptySet()).isEmpty()) {
+                pipePartCache.remove(loader.getLocation(), loader);
+            }
+        }
+    }
+
     private class PipeRemovalListener implements RemovalListener<SimpleLocation, Pipe> {
         @Override
         public void onRemoval(RemovalNotification<SimpleLocation, Pipe> notification) {
@@ -634,28 +1946,23 @@ public class PipeManager {
             if (pipe == null) {
                 return;
             }
+            pipe = pipe.resolve();
 
-            if (pipe.getInputs().isEmpty() || notification.getCause() != RemovalCause.EXPLICIT) {
-                for (PipeInput input : pipe.getInputs().values()) {
-                    pipeCache.invalidate(input.getLocation());
-                    pipePartCache.remove(input.getLocation(), input);
-                }
-                for (SimpleLocation location : pipe.getPipeBlocks()) {
-                    singleCache.remove(location);
-                }
-                for (PipeOutput output : pipe.getOutputs().values()) {
-                    removeFromMultiCache(output.getLocation(), pipe);
-                    if (multiCache.getOrDefault(output.getLocation(), Collections.emptySet()).isEmpty()) {
-                        pipePartCache.remove(output.getLocation(), output);
-                    }
+            if (notification.getCause() == RemovalCause.REPLACED) {
+                Pipe current = pipeCache.asMap().get(notification.getKey());
+                if (current != null && current.resolve() == pipe) {
+                    // the entry was only updated, e.g. to the pipe that this one was merged into
+                    return;
                 }
-                for (ChunkLoader loader : pipe.getChunkLoaders().values()) {
-                    removeFromMultiCache(loader.getLocation(), pipe);
-                    if (multiCache.getOrDefault(loader.getLocation(), Collections.emptySet()).isEmpty()) {
-                        pipePartCache.remove(loader.getLocation(), loader);
-                    }
+                if (!pipe.getInputs().containsKey(notification.getKey())) {
+                    // the input was moved to a different pipe, e.g. when the pipe was split
+                    return;
                 }
             }
+
+            if (pipe.getInputs().isEmpty() || notification.getCause() != RemovalCause.EXPLICIT) {
+                unregisterPipe(pipe);
+            }
         }
     }
 }
@@ -0,0 +1,170 @@
+package io.github.apfelcreme.Pipes.Manager;
+
+import io.github.apfelcreme.Pipes.Pipe.PipeRecord;
+import io.github.apfelcreme.Pipes.Pipes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+
+/**
+ * Stores the layout of all known pipes in one binary file per world so that they don't have to be
+ * searched for again after a restart. The stored pipes are checked against the world when they are used.
+ */
+public class PipeStorage {
+
+    private static final int MAGIC = 0x50495045; // PIPE
+    private static final int VERSION = 2;
+    private static final String EXTENSION = ".dat";
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    private PipeStorage() {}
+
+    private static File getFolder() {
+        return new File(Pipes.getInstance().getDataFolder(), "pipes");
+    }
+
+    /**
+     * returns the name of the file that the pipes of a world are stored in. World names may contain characters that
+     * aren't allowed in file names so everything but letters, digits, dashes and underscores is replaced and a hash
+     * of the real name is added to keep the names of different worlds apart. The real name is stored in the file.
+     *
+     * @param worldName the name of the world
+     * @return the file name
+     */
+    private static String getFileName(String worldName) {
+        return worldName.replaceAll("[^A-Za-z0-9_-]", "_") + "-" + Integer.toHexString(worldName.hashCode()) + EXTENSION;
+    }
+
+    /**
+     * Replace a file with another one, atomically if the file system supports it
+     *
+     * @param source the new file
+     * @param target the file to replace
+     * @throws IOException if the file couldn't be moved
+     */
+    private static void move(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public static void load() {
+        File[] files = getFolder().listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (files == null) {
+            return;
+        }
+        int count = 0;
+        for (File file : files) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    Pipes.getInstance().getLogger().log(Level.WARNING, "Ignoring stored pipes in " + file.getName() + " as they have an unknown format.");
+                    continue;
+                }
+                String worldName = in.readUTF();
+                int size = in.readInt();
+                for (int i = 0; i < size; i++) {
+                    PipeRecord record = PipeRecord.read(worldName, in);
+                    if (record != null) {
+                        PipeManager.getInstance().addStoredPipe(record);
+                        count++;
+                    }
+                }
+            } catch (IOException e) {
+                Pipes.getInstance().getLogger().log(Level.SEVERE, "Could not load stored pipes from " + file.getName(), e);
+            }
+        }
+        Pipes.getInstance().getLogger().log(Level.INFO, "Loaded " + count + " stored pipes.");
+    }
+
+    public static void save() {
+        Map<String, List<PipeRecord>> worlds = new HashMap<>();
+        for (PipeRecord record : PipeManager.getInstance().getPipeRecords()) {
+            worlds.computeIfAbsent(record.getWorldName(), w -> new ArrayList<>()).add(record);
+        }
+
+        File folder = getFolder();
+        if (!worlds.isEmpty()) {
+            folder.mkdirs();
+        }
+
+        // every world is written to a temporary file first and then moved over the old one, so a crash
+        // while saving leaves either the old or the new file and never a truncated one
+        int count = 0;
+        boolean failed = false;
+        Set<String> fileNames = new HashSet<>();
+        for (Map.Entry<String, List<PipeRecord>> entry : worlds.entrySet()) {
+            File file = new File(folder, getFileName(entry.getKey()));
+            File tempFile = new File(folder, file.getName() + TEMP_EXTENSION);
+            fileNames.add(file.getName());
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tempFile))))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().size());
+                    for (PipeRecord record : entry.getValue()) {
+                        record.write(out);
+                    }
+                }
+                move(tempFile, file);
+                count += entry.getValue().size();
+            } catch (IOException e) {
+                failed = true;
+                tempFile.delete();
+                Pipes.getInstance().getLogger().log(Level.SEVERE, "Could not save stored pipes to " + file.getName(), e);
+            }
+        }
+
+        // only remove the files of worlds without pipes once everything else was saved
+        if (!failed) {
+            File[] oldFiles = folder.listFiles((dir, name) -> name.endsWith(EXTENSION));
+            if (oldFiles != null) {
+                for (File file : oldFiles) {
+                    if (!fileNames.contains(file.getName())) {
+                        file.delete();
+                    }
+                }
+            }
+        }
+        Pipes.getInstance().getLogger().log(Level.INFO, "Saved " + count + " pipes.");
+    }
+}
@@ -6,6 +6,7 @@ import de.themoep.inventorygui.GuiStateElement;
 import de.themoep.inventorygui.GuiStorageElement;
 import de.themoep.inventorygui.InventoryGui;
 import de.themoep.inventorygui.StaticGuiElement;
+import io.github.apfelcreme.Pipes.Manager.PipeManager;
 import io.github.apfelcreme.Pipes.Pipes;
 import io.github.apfelcreme.Pipes.PipesConfig;
 import io.github.apfelcreme.Pipes.PipesItem;
@@ -41,10 +42,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.logging.Level;
 import java.util.stream.Collectors;
 
 /*
@@ -71,11 +69,24 @@ public abstract class AbstractPipePart {
 
     private final PipesItem type;
     private final SimpleLocation location;
-    private Map<Option<?>, Value<?>> options = new HashMap<>();
+    /**
+     * the options of this part indexed by their ordinal, used to check that an option belongs to this part
+     */
+    private final Option<?>[] optionKeys;
+    /**
+     * the values of this part's options indexed by the option's ordinal, <code>null</code> if not set
+     */
+    private final Value<?>[] options;
 
     protected AbstractPipePart(PipesItem type, Location location) {
         this.type = type;
         this.location = new SimpleLocation(location);
+        Option<?>[] availableOptions = getOptions();
+        optionKeys = new Option<?>[availableOptions.length];
+        for (Option<?> option : availableOptions) {
+            optionKeys[option.ordinal()] = option;
+        }
+        options = new Value<?>[optionKeys.length];
         loadOptions();
     }
     
@@ -132,13 +143,15 @@ public abstract class AbstractPipePart {
      * @return              The value of the option or <code>null</code> if it wasn't set
      */
     public <T> Value<T> getValue(Option<T> option, Value<T> defaultValue) {
-        Value<?> value = options.getOrDefault(option, defaultValue);
-        if (!option.isValid(value)) {
-            options.remove(option);
-            Pipes.getInstance().getLogger().log(Level.SEVERE, "Removed stored value " + value + " for option " + option + " from part at " + getLocation() + " because it's not compatible with value type <" + option.getValueType().getSimpleName() + ">!");
-            return null;
+        int ordinal = option.ordinal();
+        if (ordinal >= 0 && ordinal < optionKeys.length && optionKeys[ordinal] == option) {
+            // values are validated when they are set
+            Value<?> value = options[ordinal];
+            if (value != null) {
+                return (Value<T>) value;
+            }
         }
-        return (Value<T>) value;
+        return defaultValue;
     }
 
     /**
@@ -182,10 +195,14 @@ public abstract class AbstractPipePart {
      * @throws IllegalArgumentException When the values type is not compatible with the option
      */
     public <T> void setOption(Option<T> option, Value<T> value, boolean save) {
-        if (!option.isValid(value)) {
+        if (value != null && !option.isValid(value)) {
             throw new IllegalArgumentException("The option " + option + "< " + option.getValueType().getSimpleName() + "> does not accept the value " + value + "!");
         }
-        options.put(option, value);
+        int ordinal = option.ordinal();
+        if (ordinal < 0 || ordinal >= optionKeys.length || optionKeys[ordinal] != option) {
+            throw new IllegalArgumentException("The option " + option + " is not available for " + getType() + "!");
+        }
+        options[ordinal] = value;
         if (save) {
             Container holder = getHolder();
             if (holder != null) {
@@ -219,8 +236,10 @@ public abstract class AbstractPipePart {
      */
     protected String getOptionsString() {
         StringBuilder s = new StringBuilder();
-        for (Map.Entry<Option<?>, Value<?>> option : options.entrySet()) {
-            s.append(',').append(option.getKey().name()).append('=').append(option.getValue().getValue());
+        for (int i = 0; i < options.length; i++) {
+            if (options[i] != null) {
+                s.append(',').append(optionKeys[i].name()).append('=').append(options[i].getValue());
+            }
         }
         return s.toString();
     }
@@ -240,7 +259,10 @@ public abstract class AbstractPipePart {
         if (gui == null) {
             gui = new InventoryGui(Pipes.getInstance(), holder, holder.getCustomName(), getGuiSetup());
 
-            gui.addElement(new GuiStorageElement('i', holder.getInventory()));
+            GuiStorageElement storageElement = new GuiStorageElement('i', holder.getInventory());
+            // the GUI is shared between all part instances of that block so invalidate by location
+            storageElement.setApplyStorage(() -> PipeManager.getInstance().invalidateFilter(getLocation()));
+            gui.addElement(storageElement);
             gui.setFiller(PipesConfig.getGuiItemStack(getType().toConfigKey() + ".filler"));
 
             if (getOptions().length > 0) {
@@ -566,6 +588,7 @@ public abstract class AbstractPipePart {
         private final Class<?> valueType;
         private final Value<T>[] possibleValues;
         private final GuiPosition guiPosition;
+        private int ordinal = -1;
 
         /**
          * An option that this pipe part can have
@@ -616,6 +639,21 @@ public abstract class AbstractPipePart {
             return name;
         }
 
+        /**
+         * Get the position of this option in its options list
+         * @return  The ordinal, dense within the list, or -1 if it wasn't added to a list
+         */
+        public int ordinal() {
+            return ordinal;
+        }
+
+        void setOrdinal(int ordinal) {
+            if (this.ordinal != -1) {
+                throw new IllegalStateException("The option " + name + " was already added to a list!");
+            }
+            this.ordinal = ordinal;
+        }
+
         /**
          * Get the class of the values that this option accepts
          * @return  The class of the values that this option accepts
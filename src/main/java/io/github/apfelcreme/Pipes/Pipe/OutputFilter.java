@@ -0,0 +1,238 @@
+package io.github.apfelcreme.Pipes.Pipe;
+
+import org.bukkit.Material;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+
+/**
+ * The compiled, immutable filter of a {@link PipeOutput}. Every filter item is turned into a key that only
+ * contains the attributes which the output's filter options compare, so matching an item is a single hash
+ * lookup instead of comparing it with every filter item.
+ */
+public class OutputFilter {
+
+    private static final Object NO_META = new Object();
+
+    /**
+     * the generation of all output filters, it lives here instead of in {@link PipeOutput} so that
+     * reading it doesn't need any output to be loaded
+     */
+    private static final AtomicInteger GENERATION = new AtomicInteger();
+
+    private final boolean whitelist;
+    private final boolean empty;
+    private final boolean materialFilter;
+    private final boolean damageFilter;
+    private final boolean displayFilter;
+    private final boolean enchantmentFilter;
+    private final boolean dataFilter;
+
+    private final EnumSet<Material> materials = EnumSet.noneOf(Material.class);
+    private final Map<Key, ItemStack> filters = new HashMap<>();
+    private final ItemStack firstFilter;
+
+    private OutputFilter(boolean whitelist, boolean materialFilter, boolean damageFilter, boolean displayFilter,
+                         boolean enchantmentFilter, boolean dataFilter, ItemStack[] contents) {
+        this.whitelist = whitelist;
+        this.materialFilter = materialFilter;
+        this.damageFilter = damageFilter;
+        this.displayFilter = displayFilter;
+        this.enchantmentFilter = enchantmentFilter;
+        this.dataFilter = dataFilter;
+
+        ItemStack first = null;
+        for (ItemStack filterItem : contents) {
+            if (filterItem == null) {
+                continue;
+            }
+            if (first == null) {
+                first = filterItem;
+            }
+            materials.add(filterItem.getType());
+            // the first slot wins if multiple items have the same key
+            filters.putIfAbsent(new Key(filterItem), filterItem);
+        }
+        firstFilter = first;
+        empty = first == null;
+    }
+
+    /**
+     * Compile the filter of an output
+     *
+     * @param output   The output to read the filter options from
+     * @param contents The contents of the output's inventory
+     * @return The compiled filter
+     */
+    public static OutputFilter compile(PipeOutput output, ItemStack[] contents) {
+        return compile(
+                output.getOption(PipeOutput.Options.WHITELIST),
+                output.getOption(PipeOutput.Options.MATERIAL_FILTER),
+                output.getOption(PipeOutput.Options.DAMAGE_FILTER),
+                output.getOption(PipeOutput.Options.DISPLAY_FILTER),
+                output.getOption(PipeOutput.Options.ENCHANTMENT_FILTER),
+                output.getOption(PipeOutput.Options.DATA_FILTER),
+                contents
+        );
+    }
+
+    /**
+     * Compile a filter from its options
+     *
+     * @param whitelist         Whether or not the filter is a whitelist
+     * @param materialFilter    Whether or not the material is compared
+     * @param damageFilter      Whether or not the damage is compared
+     * @param displayFilter     Whether or not the display name and lore are compared
+     * @param enchantmentFilter Whether or not the enchantments are compared
+     * @param dataFilter        Whether or not the whole item meta is compared
+     * @param contents          The filter items
+     * @return The compiled filter
+     */
+    static OutputFilter compile(boolean whitelist, boolean materialFilter, boolean damageFilter, boolean displayFilter,
+                                boolean enchantmentFilter, boolean dataFilter, ItemStack[] contents) {
+        return new OutputFilter(whitelist, materialFilter, damageFilter, displayFilter, enchantmentFilter, dataFilter, contents);
+    }
+
+    /**
+     * returns the global filter generation
+     *
+     * @return the generation, changes every time the filter of any output changes
+     */
+    public static int getGeneration() {
+        return GENERATION.get();
+    }
+
+    /**
+     * Mark that the filter of an output changed
+     */
+    static void nextGeneration() {
+        GENERATION.incrementAndGet();
+    }
+
+    /**
+     * Get whether or not the output is in whitelist mode
+     *
+     * @return <code>true</code> if it's a whitelist; <code>false</code> if it's a blacklist
+     */
+    public boolean isWhitelist() {
+        return whitelist;
+    }
+
+    /**
+     * Get whether or not there are no filter items
+     *
+     * @return <code>true</code> if there are no filter items
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * Find the filter item that matches an item stack
+     *
+     * @param item The item stack to check
+     * @return The first filter item that matches the stack or <code>null</code> if none does
+     */
+    public ItemStack match(ItemStack item) {
+        if (item == null || empty) {
+            return null;
+        }
+        if (!materialFilter && !damageFilter && !displayFilter && !enchantmentFilter && !dataFilter) {
+            // nothing to compare, every item matches
+            return firstFilter;
+        }
+        if (materialFilter && !materials.contains(item.getType())) {
+            return null;
+        }
+        return filters.get(new Key(item));
+    }
+
+    /**
+     * Check whether or not an item stack matches a single filter item
+     *
+     * @param filter The filter item to match against
+     * @param item   The item stack to check
+     * @return <code>true</code> if the filter is similar; <code>false</code> if not
+     */
+    public boolean matches(ItemStack filter, ItemStack item) {
+        if (filter == null || item == null) {
+            return false;
+        }
+        if (materialFilter && filter.getType() != item.getType()) {
+            return false;
+        }
+        return new Key(filter).equals(new Key(item));
+    }
+
+    /**
+     * The attributes of an item stack that the filter options compare
+     */
+    private class Key {
+        private final Material material;
+        private final int damage;
+        private final Object display;
+        private final Map<Enchantment, Integer> enchantments;
+        private final Object meta;
+        private final int hash;
+
+        private Key(ItemStack item) {
+            ItemMeta itemMeta = (displayFilter || dataFilter) && item.hasItemMeta() ? item.getItemMeta() : null;
+            material = materialFilter ? item.getType() : null;
+            damage = damageFilter ? item.getDurability() : Integer.MIN_VALUE;
+            if (displayFilter) {
+                display = itemMeta != null
+                        ? Arrays.asList(itemMeta.hasDisplayName() ? itemMeta.getDisplayName() : null, itemMeta.hasLore() ? itemMeta.getLore() : null)
+                        : NO_META;
+            } else {
+                display = null;
+            }
+            enchantments = enchantmentFilter ? item.getEnchantments() : null;
+            meta = dataFilter ? (itemMeta != null ? itemMeta : NO_META) : null;
+            hash = Objects.hash(material, damage, display, enchantments, meta);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return hash == key.hash
+                    && material == key.material
+                    && damage == key.damage
+                    && Objects.equals(display, key.display)
+                    && Objects.equals(enchantments, key.enchantments)
+                    && Objects.equals(meta, key.meta);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
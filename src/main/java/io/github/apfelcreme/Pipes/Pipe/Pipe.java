@@ -1,7 +1,5 @@
 package io.github.apfelcreme.Pipes.Pipe;
 
-import com.google.common.collect.Multimap;
-import com.google.common.collect.MultimapBuilder;
 import io.github.apfelcreme.Pipes.Exception.ChunkNotLoadedException;
 import io.github.apfelcreme.Pipes.PipesConfig;
 import io.github.apfelcreme.Pipes.PipesUtil;
@@ -11,10 +9,14 @@ import org.bukkit.Particle;
 import org.bukkit.World;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /*
  * Copyright (C) 2016 Lord36 aka Apfelcreme
@@ -43,7 +45,27 @@ public class Pipe {
     private final Material type;
 
     private int lastTransfer = 0;
+    private int lastAccess = 0;
     private int transfers = 0;
+    private int cacheWeight = 0;
+
+    private double tokens = Double.NaN;
+    private int tokenTick = 0;
+
+    private static final int MAX_ROUTES = 256;
+    private final Map<ItemStack, Route> routes = new HashMap<>();
+    private int routeGeneration = -1;
+    /**
+     * the last version that any pipe got, a new or changed pipe never reuses the version of another one
+     */
+    private static final AtomicInteger TOPOLOGY_VERSION = new AtomicInteger();
+    private int topologyVersion = TOPOLOGY_VERSION.incrementAndGet();
+    private long[] chunkKeys = null;
+
+    /**
+     * the pipe that this one was merged into, <code>null</code> if this pipe wasn't merged
+     */
+    private Pipe parent = null;
 
     public Pipe(LinkedHashMap<SimpleLocation, PipeInput> inputs, LinkedHashMap<SimpleLocation, PipeOutput> outputs,
                 LinkedHashMap<SimpleLocation, ChunkLoader> chunkLoaders, LinkedHashSet<SimpleLocation> pipeBlocks, Material type) {
@@ -54,6 +76,58 @@ public class Pipe {
         this.type = type;
     }
 
+    /**
+     * returns the pipe that this pipe currently is. Merged pipes stay in the caches until they are looked up
+     * again, they resolve to the pipe they were merged into. The path to it is shortened on every lookup.
+     *
+     * @return the pipe that this one was merged into or this pipe if it wasn't merged
+     */
+    public Pipe resolve() {
+        if (parent == null) {
+            return this;
+        }
+        Pipe root = parent;
+        while (root.parent != null) {
+            root = root.parent;
+        }
+        Pipe pipe = this;
+        while (pipe.parent != root && pipe.parent != null) {
+            Pipe next = pipe.parent;
+            pipe.parent = root;
+            pipe = next;
+        }
+        return root;
+    }
+
+    /**
+     * Check whether or not this pipe was merged into a different one
+     *
+     * @return <code>true</code> if this pipe was merged; <code>false</code> if it is still a pipe of its own
+     */
+    public boolean isMerged() {
+        return parent != null;
+    }
+
+    /**
+     * Merge a different pipe into this one. The blocks and parts of the other pipe are moved to this pipe
+     * and the other pipe resolves to this one from now on. Only the smaller pipe should be merged into the larger one.
+     *
+     * @param other the pipe to merge into this one
+     */
+    public void absorb(Pipe other) {
+        inputs.putAll(other.inputs);
+        outputs.putAll(other.outputs);
+        chunkLoaders.putAll(other.chunkLoaders);
+        pipeBlocks.addAll(other.pipeBlocks);
+        lastAccess = Math.max(lastAccess, other.lastAccess);
+        other.inputs.clear();
+        other.outputs.clear();
+        other.chunkLoaders.clear();
+        other.pipeBlocks.clear();
+        other.parent = this;
+        markChanged();
+    }
+
     /**
      * returns the set of inputs
      *
@@ -128,6 +202,59 @@ public class Pipe {
         this.lastTransfer = lastTransfer;
     }
 
+    /**
+     * returns the weight of this pipe in the pipe cache, that is the number of its glass blocks and parts
+     *
+     * @return the weight
+     */
+    public int getWeight() {
+        return pipeBlocks.size() + inputs.size() + outputs.size() + chunkLoaders.size();
+    }
+
+    /**
+     * returns the weight that each of this pipe's input entries has in the pipe cache. The inputs share
+     * the weight of the pipe, the value only changes in {@link #updateCacheWeight()}.
+     *
+     * @return the weight of one entry
+     */
+    public int getCacheWeight() {
+        return cacheWeight;
+    }
+
+    /**
+     * Update the weight of this pipe's input entries in the pipe cache to the current weight of the pipe.
+     * The cache only weighs an entry when it is put, so the entries need to be put again if it changed.
+     *
+     * @return <code>true</code> if the weight changed; <code>false</code> if not
+     */
+    public boolean updateCacheWeight() {
+        int inputCount = Math.max(inputs.size(), 1);
+        int weight = (getWeight() + inputCount - 1) / inputCount;
+        if (weight == cacheWeight) {
+            return false;
+        }
+        cacheWeight = weight;
+        return true;
+    }
+
+    /**
+     * Get the last tick this pipe was looked up by one of its inputs
+     *
+     * @return The tick number of the last lookup
+     */
+    public int getLastAccess() {
+        return lastAccess;
+    }
+
+    /**
+     * Set the last tick this pipe was looked up by one of its inputs
+     *
+     * @param lastAccess The tick number of the last lookup
+     */
+    public void setLastAccess(int lastAccess) {
+        this.lastAccess = lastAccess;
+    }
+
     /**
      * Get the amount of transfers in this transfer cycle
      *
@@ -146,6 +273,102 @@ public class Pipe {
         this.transfers = transfers;
     }
 
+    /**
+     * Refill the token bucket that limits the throughput of this pipe. A new pipe starts with a full bucket.
+     *
+     * @param tick        the current tick
+     * @param ratePerTick the amount of tokens that get added per tick
+     * @param burst       the maximum amount of tokens
+     * @return the amount of available tokens
+     */
+    public double refillTokens(int tick, double ratePerTick, double burst) {
+        if (Double.isNaN(tokens)) {
+            tokens = burst;
+        } else if (tick > tokenTick) {
+            tokens = Math.min(burst, tokens + (tick - tokenTick) * ratePerTick);
+        }
+        tokenTick = tick;
+        return tokens;
+    }
+
+    /**
+     * Get the amount of tokens that this pipe currently has available for transfers
+     *
+     * @return the amount of tokens as of the last refill
+     */
+    public double getTokens() {
+        return tokens;
+    }
+
+    /**
+     * Use up tokens of this pipe
+     *
+     * @param amount the amount of tokens that were used
+     */
+    public void takeTokens(double amount) {
+        tokens -= amount;
+    }
+
+    /**
+     * Get the amount of ticks until this pipe has at least one token again
+     *
+     * @param ratePerTick the amount of tokens that get added per tick
+     * @return the amount of ticks, 0 if there already is a token
+     */
+    public int getTicksUntilToken(double ratePerTick) {
+        if (tokens >= 1) {
+            return 0;
+        }
+        return (int) Math.ceil((1 - tokens) / ratePerTick);
+    }
+
+    /**
+     * Get the version of this pipe's layout
+     *
+     * @return the version, changes every time blocks or parts get added or removed and is never shared
+     * with another pipe
+     */
+    public int getTopologyVersion() {
+        return topologyVersion;
+    }
+
+    /**
+     * Mark the layout of this pipe as changed. This needs to be called whenever blocks or parts
+     * get added to or removed from the pipe so that the cached routes and chunk keys get rebuilt.
+     */
+    public void markChanged() {
+        topologyVersion = TOPOLOGY_VERSION.incrementAndGet();
+        routes.clear();
+        chunkKeys = null;
+    }
+
+    /**
+     * Get the route for an item. Routes are cached by the item type and data until the layout of
+     * the pipe or the filter of any output changes.
+     *
+     * @param item The item to route
+     * @return The route with the outputs in the order they should be tried in
+     */
+    public Route getRoute(ItemStack item) {
+        int generation = OutputFilter.getGeneration();
+        if (generation != routeGeneration) {
+            routes.clear();
+            routeGeneration = generation;
+        }
+        ItemStack key = item.asOne();
+        Route route = routes.get(key);
+        if (route == null) {
+            route = Route.build(outputs.values(), key);
+            if (route.isCacheable()) {
+                if (routes.size() >= MAX_ROUTES) {
+                    routes.clear();
+                }
+                routes.put(key, route);
+            }
+        }
+        return route;
+    }
+
     /**
      * displays particles around a pipe
      * @param players The player to show the pipe to, none to show it to everyone
@@ -197,48 +420,74 @@ public class Pipe {
                 String.valueOf(chunkLoaders.size()));
     }
 
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-
-        Pipe pipe = (Pipe) o;
-
-        return inputs.equals(pipe.inputs)
-                && outputs.equals(pipe.outputs)
-                && chunkLoaders.equals(pipe.chunkLoaders)
-                && pipeBlocks.equals(pipe.pipeBlocks);
-
-    }
-
-    @Override
-    public int hashCode() {
-        int result = inputs.hashCode();
-        result = 31 * result + outputs.hashCode();
-        result = 31 * result + chunkLoaders.hashCode();
-        result = 31 * result + pipeBlocks.hashCode();
-        result = 31 * result + type.hashCode();
-        return result;
+    /**
+     * Check whether or not all chunks of this pipe are loaded. This only checks every distinct chunk once.
+     *
+     * @param startLocation the location from which the pipe was accessed
+     * @throws ChunkNotLoadedException with a location in the first chunk that isn't loaded
+     */
+    public void checkLoaded(SimpleLocation startLocation) throws ChunkNotLoadedException {
+        SimpleLocation unloaded = getUnloadedLocation(startLocation);
+        if (unloaded != null) {
+            throw new ChunkNotLoadedException(unloaded);
+        }
     }
 
-    public void checkLoaded(SimpleLocation startLocation) throws ChunkNotLoadedException {
+    /**
+     * Find a chunk of this pipe that isn't loaded. This only checks every distinct chunk once.
+     *
+     * @param startLocation the location from which the pipe was accessed
+     * @return a location in the first chunk that isn't loaded or <code>null</code> if all chunks are loaded
+     */
+    public SimpleLocation getUnloadedLocation(SimpleLocation startLocation) {
         World world = Bukkit.getWorld(startLocation.getWorldName());
         if (world == null) {
-            return;
+            return null;
         }
 
-        Multimap<Integer, Integer> chunks = MultimapBuilder.hashKeys().hashSetValues().build();
-        LinkedHashSet<SimpleLocation> locations = new LinkedHashSet<>(pipeBlocks);
-        locations.addAll(inputs.keySet());
-        locations.addAll(outputs.keySet());
-        outputs.values().stream().map(PipeOutput::getTargetLocation).forEach(locations::add);
-        for (SimpleLocation location : locations) {
-            chunks.put(location.getX() >> 4, location.getZ() >> 4);
+        for (long chunkKey : getChunkKeys()) {
+            int chunkX = (int) chunkKey;
+            int chunkZ = (int) (chunkKey >> 32);
+            if (!world.isChunkLoaded(chunkX, chunkZ)) {
+                // report a location inside of the unloaded chunk so that callers know which chunk to wait for
+                return new SimpleLocation(startLocation.getWorldName(), chunkX << 4, startLocation.getY(), chunkZ << 4);
+            }
         }
-        for (Map.Entry<Integer, Integer> chunk : chunks.entries()) {
-            if (!world.isChunkLoaded(chunk.getKey(), chunk.getValue())) {
-                throw new ChunkNotLoadedException(startLocation);
+        return null;
+    }
+
+    /**
+     * returns the keys of all chunks that the blocks, inputs, outputs and output targets of this pipe are in.
+     * The array is cached until the layout of the pipe changes and must not be modified.
+     *
+     * @return the sorted, distinct chunk keys
+     * @see SimpleLocation#chunkKey(int, int)
+     */
+    public long[] getChunkKeys() {
+        long[] keys = chunkKeys;
+        if (keys == null) {
+            keys = new long[pipeBlocks.size() + inputs.size() + outputs.size() * 2];
+            int i = 0;
+            for (SimpleLocation location : pipeBlocks) {
+                keys[i++] = location.getChunkKey();
+            }
+            for (SimpleLocation location : inputs.keySet()) {
+                keys[i++] = location.getChunkKey();
+            }
+            for (PipeOutput output : outputs.values()) {
+                keys[i++] = output.getLocation().getChunkKey();
+                keys[i++] = output.getTargetLocation().getChunkKey();
+            }
+            Arrays.sort(keys);
+            int distinct = 0;
+            for (int j = 0; j < keys.length; j++) {
+                if (j == 0 || keys[j] != keys[distinct - 1]) {
+                    keys[distinct++] = keys[j];
+                }
             }
+            keys = Arrays.copyOf(keys, distinct);
+            chunkKeys = keys;
         }
+        return keys;
     }
 }
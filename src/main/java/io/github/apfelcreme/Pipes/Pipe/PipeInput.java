@@ -1,5 +1,6 @@
 package io.github.apfelcreme.Pipes.Pipe;
 
+import io.github.apfelcreme.Pipes.Manager.ItemMoveScheduler;
 import io.github.apfelcreme.Pipes.PipesItem;
 import org.bukkit.block.BlockFace;
 import org.bukkit.block.BlockState;
@@ -64,6 +65,15 @@ public class PipeInput extends AbstractPipePart {
         return Options.get(name);
     }
 
+    @Override
+    public <T> void setOption(Option<T> option, Value<T> value, boolean save) {
+        super.setOption(option, value, save);
+        if (save) {
+            // a changed option might allow items that were blocked before
+            ItemMoveScheduler.getInstance().wakeBlocked(getLocation());
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         return this == o
@@ -104,6 +114,7 @@ public class PipeInput extends AbstractPipePart {
         public static final Option<Boolean> MERGE = add(new Option<>("MERGE", Value.TRUE, Value.FALSE));
 
         protected static <T> Option<T> add(Option<T> option) {
+            option.setOrdinal(VALUES.size());
             VALUES.put(option.name().toLowerCase(), option);
             return option;
         }
@@ -1,16 +1,17 @@
 package io.github.apfelcreme.Pipes.Pipe;
 
+import io.github.apfelcreme.Pipes.Manager.ItemMoveScheduler;
 import io.github.apfelcreme.Pipes.PipesItem;
 import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
 import org.bukkit.block.BlockState;
+import org.bukkit.block.Container;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.minecart.HopperMinecart;
 import org.bukkit.entity.minecart.StorageMinecart;
 import org.bukkit.inventory.InventoryHolder;
 import org.bukkit.inventory.ItemStack;
-import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.material.Directional;
 
 import java.util.ArrayList;
@@ -48,6 +49,10 @@ public class PipeOutput extends AbstractPipePart {
 
     private final BlockFace facing;
 
+    private volatile int filterVersion = 0;
+    private OutputFilter compiledFilter = null;
+    private int compiledFilterVersion = -1;
+
     public PipeOutput(BlockState state) {
         super(PipesItem.PIPE_OUTPUT, state.getLocation());
         this.facing = ((Directional) state.getData()).getFacing();
@@ -118,9 +123,20 @@ public class PipeOutput extends AbstractPipePart {
      * @return  A result that represents why or why not the item is accepted by this output
      */
     public AcceptResult accepts(PipeInput input, ItemStack itemStack) {
+        return accepts(input, checkFilter(itemStack));
+    }
+
+    /**
+     * Check whether or not this output can accept an item stack whose filter result is already known.
+     * This only checks the state of the output block.
+     *
+     * @param input         The input that tries to move the item
+     * @param filterResult  The result of {@link #checkFilter(ItemStack)} for the item
+     * @return  A result that represents why or why not the item is accepted by this output
+     */
+    public AcceptResult accepts(PipeInput input, AcceptResult filterResult) {
         Block block = getLocation().getBlock();
-        BlockState state = block != null ? block.getState(false) : null;
-        if (state == null || !(state instanceof InventoryHolder)) {
+        if (block == null || block.getType() != getType().getMaterial() || filterResult.getType() == ResultType.DENY_INVALID) {
             return new AcceptResult(ResultType.DENY_INVALID, null);
         }
         Options.Overflow outputOverflow = getOption(Options.OVERFLOW);
@@ -129,28 +145,35 @@ public class PipeOutput extends AbstractPipePart {
             return new AcceptResult(ResultType.DENY_REDSTONE, null);
         }
 
-        ItemStack filter = null;
-        boolean isEmpty = true;
-        boolean isWhitelist = getOption(Options.WHITELIST);
-        for (ItemStack filterItem : ((InventoryHolder) state).getInventory().getContents()) {
-            isEmpty &= filterItem == null;
-            if (matchesFilter(filterItem, itemStack)) {
-                if (isWhitelist) {
-                    filter = filterItem;
-                    break;
-                } else {
-                    return new AcceptResult(ResultType.DENY_BLACKLIST, filterItem);
-                }
-            }
+        if (filterResult.getType() == ResultType.DENY_BLACKLIST) {
+            return filterResult;
+        } else if (block.isBlockPowered()) {
+            return new AcceptResult(ResultType.DENY_REDSTONE, filterResult.getFilterItem());
         }
+        return filterResult;
+    }
 
-        if (block.isBlockPowered()) {
-            return new AcceptResult(ResultType.DENY_REDSTONE, filter);
-        } else if (!isEmpty && isWhitelist && filter == null) {
+    /**
+     * Check an item stack against the filter of this output only
+     *
+     * @param itemStack The item to check
+     * @return  A result of the type {@link ResultType#ACCEPT}, {@link ResultType#DENY_WHITELIST},
+     *          {@link ResultType#DENY_BLACKLIST} or {@link ResultType#DENY_INVALID} if the filter couldn't be read
+     */
+    public AcceptResult checkFilter(ItemStack itemStack) {
+        OutputFilter outputFilter = getFilter();
+        if (outputFilter == null) {
+            return new AcceptResult(ResultType.DENY_INVALID, null);
+        }
+        ItemStack filter = outputFilter.match(itemStack);
+        if (!outputFilter.isWhitelist()) {
+            return filter != null
+                    ? new AcceptResult(ResultType.DENY_BLACKLIST, filter)
+                    : new AcceptResult(ResultType.ACCEPT, null);
+        } else if (!outputFilter.isEmpty() && filter == null) {
             return new AcceptResult(ResultType.DENY_WHITELIST, null);
-        } else {
-            return new AcceptResult(ResultType.ACCEPT, filter);
         }
+        return new AcceptResult(ResultType.ACCEPT, filter);
     }
 
     /**
@@ -160,60 +183,65 @@ public class PipeOutput extends AbstractPipePart {
      * @return          <code>true</code> if the filter is similar; <code>false</code> if not
      */
     public boolean matchesFilter(ItemStack filter, ItemStack item) {
-        if (filter == null || item == null) {
-            return false;
-        }
+        OutputFilter outputFilter = getFilter();
+        return outputFilter != null && outputFilter.matches(filter, item);
+    }
 
-        if (getOption(Options.DATA_FILTER)) {
-            if (filter.hasItemMeta() != item.hasItemMeta()) {
-                return false;
-            }
-            if (filter.hasItemMeta() && !filter.getItemMeta().equals(item.getItemMeta())) {
-                return false;
+    /**
+     * Get the compiled filter of this output. It is only rebuilt after the filter version changed.
+     *
+     * @return the compiled filter or <code>null</code> if the output block is no longer valid
+     */
+    public OutputFilter getFilter() {
+        int version = filterVersion;
+        OutputFilter filter = compiledFilter;
+        if (filter == null || compiledFilterVersion != version) {
+            Container holder = getHolder();
+            if (holder == null) {
+                return null;
             }
+            filter = OutputFilter.compile(this, holder.getInventory().getContents());
+            compiledFilter = filter;
+            compiledFilterVersion = version;
         }
+        return filter;
+    }
 
-        if (getOption(Options.MATERIAL_FILTER)) {
-            if (filter.getType() != item.getType()) {
-                return false;
-            }
-        }
+    /**
+     * returns the version of the filter of this output
+     *
+     * @return the version of the filter, changes every time the filter items or options change
+     */
+    public int getFilterVersion() {
+        return filterVersion;
+    }
 
-        if (getOption(Options.DAMAGE_FILTER)) {
-            if (filter.getDurability() != item.getDurability()) {
-                return false;
-            }
-        }
+    /**
+     * returns the global filter generation
+     *
+     * @return the generation, changes every time the filter of any output changes
+     * @see OutputFilter#getGeneration()
+     */
+    public static int getFilterGeneration() {
+        return OutputFilter.getGeneration();
+    }
 
-        if (getOption(Options.DISPLAY_FILTER)) {
-            if (filter.hasItemMeta() != item.hasItemMeta()) {
-                return false;
-            }
-            if (filter.hasItemMeta()) {
-                ItemMeta filterMeta = filter.getItemMeta();
-                ItemMeta meta = item.getItemMeta();
-                if (filterMeta.hasDisplayName() != meta.hasDisplayName()) {
-                    return false;
-                }
-                if (filterMeta.hasDisplayName() && !filterMeta.getDisplayName().equals(meta.getDisplayName())) {
-                    return false;
-                }
-                if (filterMeta.hasLore() != meta.hasLore()) {
-                    return false;
-                }
-                if (filterMeta.hasLore() && !filterMeta.getLore().equals(meta.getLore())) {
-                    return false;
-                }
-            }
-        }
+    /**
+     * Mark the compiled filter as outdated so that it gets rebuilt on the next check
+     */
+    public void invalidateFilter() {
+        filterVersion++;
+        OutputFilter.nextGeneration();
+    }
 
-        if (getOption(Options.ENCHANTMENT_FILTER)) {
-            if (!filter.getEnchantments().equals(item.getEnchantments())) {
-                return false;
-            }
+    @Override
+    public <T> void setOption(Option<T> option, Value<T> value, boolean save) {
+        super.setOption(option, value, save);
+        invalidateFilter();
+        if (save) {
+            // a changed option might allow items that were blocked before
+            ItemMoveScheduler.getInstance().wakeBlocked(getLocation());
         }
-
-        return true;
     }
 
     private boolean isAcceptedEntity(Entity entity) {
@@ -350,6 +378,7 @@ public class PipeOutput extends AbstractPipePart {
         public static final Option<Boolean> DROP = add(new Option<>("DROP", Option.GuiPosition.LEFT, Value.FALSE, Value.TRUE));
 
         protected static <T> Option<T> add(Option<T> option) {
+            option.setOrdinal(VALUES.size());
             VALUES.put(option.name().toLowerCase(), option);
             return option;
         }
@@ -0,0 +1,208 @@
+package io.github.apfelcreme.Pipes.Pipe;
+
+import org.bukkit.Material;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+
+/**
+ * The layout of a pipe without any of its part objects, all locations are stored as packed block coordinates.
+ * Used to store pipes between restarts and to turn them back into a {@link Pipe} without searching for them.
+ */
+public class PipeRecord {
+
+    private final String worldName;
+    private final Material type;
+    private final long[] blocks;
+    private final long[] inputs;
+    private final long[] outputs;
+    private final long[] chunkLoaders;
+    private long[] chunkKeys = null;
+
+    public PipeRecord(String worldName, Material type, long[] blocks, long[] inputs, long[] outputs, long[] chunkLoaders) {
+        this.worldName = worldName;
+        this.type = type;
+        this.blocks = blocks;
+        this.inputs = inputs;
+        this.outputs = outputs;
+        this.chunkLoaders = chunkLoaders;
+    }
+
+    /**
+     * Create the record of a pipe
+     *
+     * @param pipe the pipe
+     * @return the record or <code>null</code> if the pipe has no blocks
+     */
+    public static PipeRecord of(Pipe pipe) {
+        if (pipe.getPipeBlocks().isEmpty()) {
+            return null;
+        }
+        return new PipeRecord(
+                pipe.getPipeBlocks().iterator().next().getWorldName(),
+                pipe.getType(),
+                pack(pipe.getPipeBlocks()),
+                pack(pipe.getInputs().keySet()),
+                pack(pipe.getOutputs().keySet()),
+                pack(pipe.getChunkLoaders().keySet())
+        );
+    }
+
+    private static long[] pack(Iterable<SimpleLocation> locations) {
+        long[] packed = new long[16];
+        int i = 0;
+        for (SimpleLocation location : locations) {
+            if (i == packed.length) {
+                packed = Arrays.copyOf(packed, i * 2);
+            }
+            packed[i++] = location.getKey();
+        }
+        return Arrays.copyOf(packed, i);
+    }
+
+    /**
+     * Read a record from a stream
+     *
+     * @param worldName the name of the world the record is in
+     * @param in        the stream to read from
+     * @return the record or <code>null</code> if its material doesn't exist anymore
+     * @throws IOException when the stream couldn't be read
+     */
+    public static PipeRecord read(String worldName, DataInput in) throws IOException {
+        Material type = Material.getMaterial(in.readUTF());
+        long[] blocks = readArray(in);
+        long[] inputs = readArray(in);
+        long[] outputs = readArray(in);
+        long[] chunkLoaders = readArray(in);
+        if (type == null) {
+            return null;
+        }
+        return new PipeRecord(worldName, type, blocks, inputs, outputs, chunkLoaders);
+    }
+
+    private static long[] readArray(DataInput in) throws IOException {
+        long[] array = new long[in.readInt()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = in.readLong();
+        }
+        return array;
+    }
+
+    /**
+     * Write this record to a stream
+     *
+     * @param out the stream to write to
+     * @throws IOException when the stream couldn't be written to
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeUTF(type.name());
+        writeArray(out, blocks);
+        writeArray(out, inputs);
+        writeArray(out, outputs);
+        writeArray(out, chunkLoaders);
+    }
+
+    private static void writeArray(DataOutput out, long[] array) throws IOException {
+        out.writeInt(array.length);
+        for (long l : array) {
+            out.writeLong(l);
+        }
+    }
+
+    public String getWorldName() {
+        return worldName;
+    }
+
+    public Material getType() {
+        return type;
+    }
+
+    /**
+     * returns the packed locations of the glass blocks
+     *
+     * @return the packed block locations
+     * @see SimpleLocation#pack(int, int, int)
+     */
+    public long[] getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * returns the packed locations of the inputs
+     *
+     * @return the packed input locations
+     */
+    public long[] getInputs() {
+        return inputs;
+    }
+
+    /**
+     * returns the packed locations of the outputs
+     *
+     * @return the packed output locations
+     */
+    public long[] getOutputs() {
+        return outputs;
+    }
+
+    /**
+     * returns the packed locations of the chunk loaders
+     *
+     * @return the packed chunk loader locations
+     */
+    public long[] getChunkLoaders() {
+        return chunkLoaders;
+    }
+
+    /**
+     * returns the keys of all chunks that the blocks, inputs and outputs of this record are in. These are
+     * the chunks that need to be loaded to restore the pipe. The array must not be modified.
+     *
+     * @return the sorted, distinct chunk keys
+     * @see SimpleLocation#chunkKey(int, int)
+     */
+    public long[] getChunkKeys() {
+        long[] keys = chunkKeys;
+        if (keys == null) {
+            keys = new long[blocks.length + inputs.length + outputs.length];
+            int i = 0;
+            for (long[] locations : new long[][]{blocks, inputs, outputs}) {
+                for (long location : locations) {
+                    // x is stored in the top 26 bits and z in the 26 bits below it
+                    keys[i++] = SimpleLocation.chunkKey((int) (location >> 38) >> 4, (int) (location << 26 >> 38) >> 4);
+                }
+            }
+            Arrays.sort(keys);
+            int distinct = 0;
+            for (int j = 0; j < keys.length; j++) {
+                if (j == 0 || keys[j] != keys[distinct - 1]) {
+                    keys[distinct++] = keys[j];
+                }
+            }
+            keys = Arrays.copyOf(keys, distinct);
+            chunkKeys = keys;
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,131 @@
+package io.github.apfelcreme.Pipes.Pipe;
+
+import org.bukkit.inventory.ItemStack;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+
+/**
+ * The outputs of a pipe that an item could be routed to, in the order they should be tried in.
+ * Outputs with a filter item that matches come first. Only the result of the filters is stored,
+ * the redstone state and validity of the outputs have to be checked on every transfer.
+ */
+public class Route {
+
+    private final ItemStack key;
+    private final PipeOutput[] outputs;
+    private final PipeOutput.AcceptResult[] filterResults;
+    private final boolean cacheable;
+
+    private Route(ItemStack key, PipeOutput[] outputs, PipeOutput.AcceptResult[] filterResults, boolean cacheable) {
+        this.key = key;
+        this.outputs = outputs;
+        this.filterResults = filterResults;
+        this.cacheable = cacheable;
+    }
+
+    /**
+     * Build the route for an item
+     *
+     * @param outputs The outputs of the pipe in their original order
+     * @param key     The item to route with an amount of one, it must not be modified afterwards
+     * @return The route
+     */
+    public static Route build(Collection<PipeOutput> outputs, ItemStack key) {
+        List<PipeOutput> inFilter = new ArrayList<>();
+        List<PipeOutput.AcceptResult> inFilterResults = new ArrayList<>();
+        List<PipeOutput> other = new ArrayList<>();
+        List<PipeOutput.AcceptResult> otherResults = new ArrayList<>();
+        boolean cacheable = true;
+        for (PipeOutput output : outputs) {
+            PipeOutput.AcceptResult result = output.checkFilter(key);
+            if (result.getType() == PipeOutput.ResultType.DENY_INVALID) {
+                // the output couldn't be read, don't remember that
+                cacheable = false;
+            }
+            if (result.isInFilter()) {
+                inFilter.add(output);
+                inFilterResults.add(result);
+            } else {
+                other.add(output);
+                otherResults.add(result);
+            }
+        }
+        inFilter.addAll(other);
+        inFilterResults.addAll(otherResults);
+        return new Route(
+                key,
+                inFilter.toArray(new PipeOutput[0]),
+                inFilterResults.toArray(new PipeOutput.AcceptResult[0]),
+                cacheable
+        );
+    }
+
+    /**
+     * returns the item that this route was built for. It has an amount of one and can be used
+     * to look up other things by the item type and data without creating a new key.
+     *
+     * @return the item, it must not be modified
+     */
+    public ItemStack getKey() {
+        return key;
+    }
+
+    /**
+     * returns the amount of outputs in this route
+     *
+     * @return the amount of outputs
+     */
+    public int size() {
+        return outputs.length;
+    }
+
+    /**
+     * returns the output at a certain position
+     *
+     * @param index the position in the route
+     * @return the output
+     */
+    public PipeOutput getOutput(int index) {
+        return outputs[index];
+    }
+
+    /**
+     * returns the result of the filter of the output at a certain position
+     *
+     * @param index the position in the route
+     * @return the result of the output's filter
+     */
+    public PipeOutput.AcceptResult getFilterResult(int index) {
+        return filterResults[index];
+    }
+
+    /**
+     * Get whether or not this route can be cached
+     *
+     * @return <code>true</code> if all outputs could be checked
+     */
+    public boolean isCacheable() {
+        return cacheable;
+    }
+}
@@ -93,6 +93,62 @@ public class SimpleLocation {
         return z;
     }
 
+    /**
+     * returns the block coordinates packed into a single long
+     *
+     * @return the packed coordinates
+     * @see #pack(int, int, int)
+     */
+    public long getKey() {
+        return pack(x, y, z);
+    }
+
+    /**
+     * packs block coordinates into a single long. x and z use 26 bits and y uses 12 bits, the same layout
+     * that Minecraft uses for block positions.
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @param z the z coordinate
+     * @return the packed coordinates
+     */
+    public static long pack(int x, int y, int z) {
+        return ((long) x & 0x3FFFFFF) << 38 | ((long) z & 0x3FFFFFF) << 12 | ((long) y & 0xFFF);
+    }
+
+    /**
+     * creates a location from packed block coordinates
+     *
+     * @param worldName the name of the world
+     * @param key       the packed coordinates
+     * @return the location
+     * @see #pack(int, int, int)
+     */
+    public static SimpleLocation unpack(String worldName, long key) {
+        return new SimpleLocation(worldName, (int) (key >> 38), (int) (key << 52 >> 52), (int) (key << 26 >> 38));
+    }
+
+    /**
+     * returns the key of the chunk this location is in
+     *
+     * @return the chunk key
+     * @see #chunkKey(int, int)
+     */
+    public long getChunkKey() {
+        return chunkKey(x >> 4, z >> 4);
+    }
+
+    /**
+     * packs chunk coordinates into a single long, the same way that Paper's Chunk#getChunkKey does
+     *
+     * @param chunkX the x coordinate of the chunk
+     * @param chunkZ the z coordinate of the chunk
+     * @return the chunk key
+     */
+    public static long chunkKey(int chunkX, int chunkZ) {
+        return (long) chunkX & 0xFFFFFFFFL | ((long) chunkZ & 0xFFFFFFFFL) << 32;
+    }
+
     /**
      * returns the location that faces the block location to the given side
      *
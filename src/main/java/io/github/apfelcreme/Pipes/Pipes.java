@@ -5,10 +5,13 @@ import co.aikar.timings.lib.TimingManager;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import io.github.apfelcreme.Pipes.Listener.BlockListener;
+import io.github.apfelcreme.Pipes.Listener.ChunkListener;
 import io.github.apfelcreme.Pipes.Listener.ConvertListener;
 import io.github.apfelcreme.Pipes.Listener.InventoryChangeListener;
 import io.github.apfelcreme.Pipes.Listener.PlayerListener;
 import io.github.apfelcreme.Pipes.Manager.ItemMoveScheduler;
+import io.github.apfelcreme.Pipes.Manager.PipeManager;
+import io.github.apfelcreme.Pipes.Manager.PipeStorage;
 import net.md_5.bungee.api.ChatMessageType;
 import net.md_5.bungee.api.chat.TextComponent;
 import org.bukkit.Material;
@@ -68,10 +71,13 @@ public class Pipes extends JavaPlugin {
         timingManager = TimingManager.of(this);
         registeredRightClicks = CacheBuilder.newBuilder().expireAfterWrite(10, TimeUnit.SECONDS).build();
         PipesConfig.load();
+        PipeStorage.load();
+        PipeManager.getInstance().startRevalidation();
         ItemMoveScheduler.load();
         getServer().getPluginManager().registerEvents(new InventoryChangeListener(this), this);
         getServer().getPluginManager().registerEvents(new PlayerListener(this), this);
         getServer().getPluginManager().registerEvents(new BlockListener(this), this);
+        getServer().getPluginManager().registerEvents(new ChunkListener(this), this);
         if (getConfig().getBoolean("convertToBlockInfoOnChunkLoad")) {
             getServer().getPluginManager().registerEvents(new ConvertListener(this), this);
         }
@@ -112,6 +118,7 @@ public class Pipes extends JavaPlugin {
     @Override
     public void onDisable() {
         ItemMoveScheduler.exit();
+        PipeStorage.save();
     }
 
     /**
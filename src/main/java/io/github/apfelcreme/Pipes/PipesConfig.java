@@ -37,7 +37,13 @@ public class PipesConfig {
 
     private static Pipes plugin;
     private static long transferCooldown;
+    private static long transferBudget;
+    private static boolean asyncDiscovery;
+    private static int transferBackoff;
     private static int transferCount;
+    private static double transferRate;
+    private static double transferBurst;
+    private static boolean transferRateStacks;
     private static double inputToOutputRatio;
     private static int maxPipeOutputs;
     private static int maxPipeLength;
@@ -57,7 +63,13 @@ public class PipesConfig {
         plugin.saveDefaultConfig();
         plugin.reloadConfig();
         transferCooldown = plugin.getConfig().getLong("transferCooldown");
+        transferBudget = plugin.getConfig().getLong("transferBudget");
+        asyncDiscovery = plugin.getConfig().getBoolean("asyncDiscovery");
+        transferBackoff = plugin.getConfig().getInt("transferBackoff");
         transferCount = plugin.getConfig().getInt("transferCount");
+        transferRate = plugin.getConfig().getDouble("transferRate");
+        transferBurst = Math.max(1, plugin.getConfig().getDouble("transferBurst"));
+        transferRateStacks = "stacks".equalsIgnoreCase(plugin.getConfig().getString("transferRateUnit"));
         inputToOutputRatio = plugin.getConfig().getDouble("inputToOutputRatio");
         maxPipeOutputs = plugin.getConfig().getInt("maxPipeOutputs");
         maxPipeLength = plugin.getConfig().getInt("maxPipeLength");
@@ -78,14 +90,23 @@ public class PipesConfig {
     }
 
     /**
-     * returns the time that the cache stores all the locations of pipes
+     * returns the time that the cache stores the locations of pipes that aren't used
      *
-     * @return the delay of pipe recalculation in s
+     * @return the idle time after which a pipe gets recalculated in s
      */
     public static long getPipeCacheDuration() {
         return plugin.getConfig().getLong("pipeCacheDuration");
     }
 
+    /**
+     * returns the time in which all cached pipes get checked against the world once
+     *
+     * @return the time in s, 0 if cached pipes shouldn't be checked
+     */
+    public static long getPipeRevalidation() {
+        return plugin.getConfig().getLong("pipeRevalidation");
+    }
+
     /**
      * returns the amount of locations to store in the cache
      *
@@ -95,6 +116,15 @@ public class PipesConfig {
         return plugin.getConfig().getLong("pipeCacheSize");
     }
 
+    /**
+     * returns the max total weight of the cached pipes, a pipe weighs as much as it has blocks and parts
+     *
+     * @return the max weight, 0 if the cache is limited by {@link #getPipeCacheSize()}
+     */
+    public static long getPipeCacheWeight() {
+        return plugin.getConfig().getLong("pipeCacheWeight");
+    }
+
     /**
      * returns the delay between item transfers
      *
@@ -104,6 +134,33 @@ public class PipesConfig {
         return transferCooldown;
     }
 
+    /**
+     * returns the time in nanoseconds that the item move task may spend per tick, 0 for no limit
+     *
+     * @return the time budget of the item move task per tick in ns
+     */
+    public static long getTransferBudget() {
+        return transferBudget;
+    }
+
+    /**
+     * returns whether or not unknown pipes should be searched for off the main thread
+     *
+     * @return whether or not asynchronous pipe discovery is enabled
+     */
+    public static boolean isAsyncDiscovery() {
+        return asyncDiscovery;
+    }
+
+    /**
+     * returns the max amount of transfer cycles that an input which couldn't move anything waits before it is checked again
+     *
+     * @return the max amount of skipped transfer cycles, 0 if blocked inputs should be checked every cycle
+     */
+    public static int getTransferBackoff() {
+        return transferBackoff;
+    }
+
     /**
      * returns the max amount of item stacks transfered per pipe transfer
      *
@@ -113,6 +170,33 @@ public class PipesConfig {
         return transferCount;
     }
 
+    /**
+     * returns the amount of items or stacks that one pipe may transfer per second
+     *
+     * @return the transfer rate per pipe, 0 if transferCount and inputToOutputRatio should be used instead
+     */
+    public static double getTransferRate() {
+        return transferRate;
+    }
+
+    /**
+     * returns the amount of items or stacks that one pipe may transfer at once after it didn't transfer anything for a while
+     *
+     * @return the burst size of the transfer rate per pipe
+     */
+    public static double getTransferBurst() {
+        return transferBurst;
+    }
+
+    /**
+     * returns whether the transfer rate counts item stacks instead of single items
+     *
+     * @return true if the transfer rate is in stacks; false if it is in items
+     */
+    public static boolean isTransferRateInStacks() {
+        return transferRateStacks;
+    }
+
     /**
      * returns the ratio of inputs to outputs for a pipe's transfer, 0 for unlimited
      *
@@ -308,16 +308,16 @@ public class PipesUtil {
     }
 
     /**
-     * Add fuel to an inventory that supports fuel
-     * @param source The inventory that we move it from
+     * Add fuel to an inventory that supports fuel. The amount of the item stack is reduced by the amount that
+     * was moved, removing it from the inventory it came from is up to the caller.
      * @param target Where to move the item to
      * @param itemStack The item stack
      * @return Whether or not the fuel was successfully set
      */
-    public static boolean addFuel(Inventory source, Inventory target, ItemStack itemStack) {
+    public static boolean addFuel(Inventory target, ItemStack itemStack) {
         ItemStack fuel = getFuel(target);
         if (fuel != null && fuel.isSimilar(itemStack)) {
-            ItemStack itemToSet = moveToSingleSlot(source, fuel, itemStack);
+            ItemStack itemToSet = moveToSingleSlot(fuel, itemStack);
             if (itemToSet == null) {
                 return false;
             }
@@ -325,21 +325,20 @@ public class PipesUtil {
             setFuel(target, itemToSet);
         } else if (fuel == null) {
             // there is no fuel currently in the fuel slot, so simply put it in
-            source.removeItem(itemStack);
-            setFuel(target, itemStack);
+            setFuel(target, new ItemStack(itemStack));
             itemStack.setAmount(0);
         }
         return true;
     }
 
     /**
-     * Calculate the result itemstack that should be moved to a single slot containing some item
-     * @param source The inventory the added item is coming from
+     * Calculate the result itemstack that should be moved to a single slot containing some item.
+     * The amount of the added item is reduced by the amount that was moved.
      * @param current The current item in the target inventory
      * @param added The item to be added to the target
      * @return The item stack that should be added to the target inventory
      */
-    public static ItemStack moveToSingleSlot(Inventory source, ItemStack current, ItemStack added) {
+    public static ItemStack moveToSingleSlot(ItemStack current, ItemStack added) {
         if (current == null || current.getAmount() == 0) {
             current = new ItemStack(added);
             added.setAmount(0);
@@ -353,15 +352,10 @@ public class PipesUtil {
             int restSize = added.getAmount() - remaining; // amount of overflowing items
 
             if (restSize > 0) {
-                ItemStack remove = new ItemStack(added);
-                remove.setAmount(remaining);
-                source.removeItem(remove);
                 added.setAmount(restSize);
 
                 current.setAmount(current.getMaxStackSize());
             } else {
-                source.removeItem(new ItemStack(added));
-
                 current.setAmount(current.getAmount() + added.getAmount());
 
                 added.setAmount(0);
@@ -0,0 +1,78 @@
+package io.github.apfelcreme.Pipes.Index;
+
+import io.github.apfelcreme.Pipes.Pipe.SimpleLocation;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+public class LocationMapTest {
+
+    @Test
+    public void testWorldsAreSeparate() {
+        LocationMap<String> map = new LocationMap<>();
+        SimpleLocation overworld = new SimpleLocation("world", 1, 2, 3);
+        SimpleLocation nether = new SimpleLocation("world_nether", 1, 2, 3);
+        assertNull(map.put(overworld, "a"));
+        assertNull(map.put(nether, "b"));
+        assertEquals(2, map.size());
+        assertEquals("a", map.get(overworld));
+        assertEquals("b", map.get(nether));
+        assertEquals("a", map.get("world", 1, 2, 3));
+        assertTrue(map.containsKey("world_nether", 1, 2, 3));
+        assertFalse(map.containsKey("world_the_end", 1, 2, 3));
+
+        map.removeWorld("world");
+        assertNull(map.get(overworld));
+        assertEquals("b", map.get(nether));
+    }
+
+    @Test
+    public void testRemoveDropsEmptyWorlds() {
+        LocationMap<String> map = new LocationMap<>();
+        SimpleLocation location = new SimpleLocation("world", -10, -64, -20);
+        map.put(location, "a");
+        assertFalse(map.remove(location, "b"));
+        assertTrue(map.remove(location, "a"));
+        assertTrue(map.isEmpty());
+        assertNull(map.getWorld("world"));
+
+        map.put(location, "a");
+        assertEquals("a", map.remove(location));
+        assertTrue(map.isEmpty());
+        assertNull(map.remove(location));
+    }
+
+    @Test
+    public void testComputeIfAbsent() {
+        LocationMap<SimpleLocation> map = new LocationMap<>();
+        SimpleLocation location = new SimpleLocation("world", 5, 70, -5);
+        assertEquals(location, map.computeIfAbsent(location, l -> l));
+        assertEquals(location, map.computeIfAbsent(location, l -> null));
+        assertEquals("b", new LocationMap<String>().getOrDefault(location, "b"));
+        assertNull(map.putIfAbsent(new SimpleLocation("world", 5, 71, -5), location));
+        assertEquals(2, map.values().size());
+        map.clear();
+        assertTrue(map.isEmpty());
+    }
+}
@@ -0,0 +1,118 @@
+package io.github.apfelcreme.Pipes.Index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+public class LongObjectMapTest {
+
+    @Test
+    public void testPutGetRemove() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        assertTrue(map.isEmpty());
+        assertNull(map.put(1, "a"));
+        assertNull(map.put(-1, "b"));
+        assertNull(map.put(0, "c"));
+        assertEquals("a", map.put(1, "d"));
+        assertEquals(3, map.size());
+        assertEquals("d", map.get(1));
+        assertEquals("b", map.get(-1));
+        assertEquals("c", map.get(0));
+        assertNull(map.get(2));
+        assertEquals("x", map.getOrDefault(2, "x"));
+
+        assertFalse(map.remove(1, "a"));
+        assertTrue(map.remove(1, "d"));
+        assertFalse(map.containsKey(1));
+        assertEquals("b", map.remove(-1));
+        assertNull(map.remove(-1));
+        assertEquals(1, map.size());
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(0));
+    }
+
+    @Test
+    public void testNullValue() {
+        assertThrows(IllegalArgumentException.class, () -> new LongObjectMap<String>().put(1, null));
+    }
+
+    @Test
+    public void testPutIfAbsentAndCompute() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        assertNull(map.putIfAbsent(5, "a"));
+        assertEquals("a", map.putIfAbsent(5, "b"));
+        assertEquals("a", map.computeIfAbsent(5, key -> "c"));
+        assertEquals("6", map.computeIfAbsent(6, Long::toString));
+        assertNull(map.computeIfAbsent(7, key -> null));
+        assertFalse(map.containsKey(7));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    public void testKeysValuesAndForEach() {
+        LongObjectMap<Long> map = new LongObjectMap<>();
+        for (long key = -50; key < 50; key++) {
+            map.put(key, key * 2);
+        }
+        long[] keys = map.keys();
+        Arrays.sort(keys);
+        assertEquals(100, keys.length);
+        assertEquals(-50, keys[0]);
+        assertEquals(49, keys[99]);
+        assertEquals(100, map.values().size());
+        map.forEach((key, value) -> assertEquals(key * 2, (long) value));
+    }
+
+    @Test
+    public void testMatchesHashMap() {
+        // random keys from a small range so that there are a lot of collisions and removals in probe sequences
+        Random random = new Random(42);
+        LongObjectMap<Long> map = new LongObjectMap<>();
+        Map<Long, Long> expected = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            long key = random.nextInt(2000) - 1000L << 20;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (long key = -1000; key < 1000; key++) {
+            assertEquals(expected.get(key << 20), map.get(key << 20));
+        }
+        long[] keys = map.keys();
+        Arrays.sort(keys);
+        assertArrayEquals(expected.keySet().stream().mapToLong(Long::longValue).sorted().toArray(), keys);
+    }
+}
@@ -0,0 +1,75 @@
+package io.github.apfelcreme.Pipes.Manager;
+
+import be.seeseemelk.mockbukkit.inventory.InventoryMock;
+import org.bukkit.Location;
+import org.bukkit.block.Block;
+import org.bukkit.event.inventory.InventoryType;
+import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.inventory.ItemStack;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+
+/**
+ * The inventory of a container block. MockBukkit's inventories hand out their internal array and have no
+ * location, this one returns copies of its storage contents and the block's location like the server's
+ * inventories do and counts how often the contents were written.
+ */
+class ContainerInventory extends InventoryMock {
+    private final Location location;
+    private int writes = 0;
+
+    ContainerInventory(Block block, InventoryType type, int size, ItemStack... contents) {
+        super(block != null ? (InventoryHolder) block.getState() : null, size, type);
+        this.location = block != null ? block.getLocation() : null;
+        for (int i = 0; i < contents.length; i++) {
+            setItem(i, contents[i]);
+        }
+    }
+
+    @Override
+    public ItemStack[] getStorageContents() {
+        ItemStack[] contents = getContents();
+        ItemStack[] copy = new ItemStack[contents.length];
+        for (int i = 0; i < contents.length; i++) {
+            copy[i] = contents[i] != null ? contents[i].clone() : null;
+        }
+        return copy;
+    }
+
+    @Override
+    public void setStorageContents(ItemStack[] items) {
+        writes++;
+        super.setStorageContents(items);
+    }
+
+    @Override
+    public Location getLocation() {
+        return location;
+    }
+
+    /**
+     * returns how often the storage contents were written
+     *
+     * @return the number of writes
+     */
+    int getWrites() {
+        return writes;
+    }
+}
@@ -0,0 +1,204 @@
+package io.github.apfelcreme.Pipes.Manager;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.ServerMock;
+import be.seeseemelk.mockbukkit.WorldMock;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.event.inventory.InventoryType;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+public class InventoryBufferTest {
+
+    private static WorldMock world;
+
+    @BeforeAll
+    public static void setUp() {
+        ServerMock server = MockBukkit.mock();
+        world = server.addSimpleWorld("world");
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    private static ContainerInventory container(Material material, InventoryType type, int size, ItemStack... contents) {
+        Block block = world.getBlockAt(0, 64, 0);
+        block.setType(material);
+        return new ContainerInventory(block, type, size, contents);
+    }
+
+    private static ItemStack named(Material material, int amount, String name) {
+        ItemStack item = new ItemStack(material, amount);
+        ItemMeta meta = item.getItemMeta();
+        meta.setDisplayName(name);
+        item.setItemMeta(meta);
+        return item;
+    }
+
+    @Test
+    public void testFillsSimilarStacksFirst() {
+        ContainerInventory chest = container(Material.CHEST, InventoryType.CHEST, 27,
+                null, new ItemStack(Material.STONE, 60), null, new ItemStack(Material.STONE, 10));
+        InventoryBuffer buffer = new InventoryBuffer(chest);
+
+        ItemStack stone = new ItemStack(Material.STONE, 10);
+        buffer.addItem(stone);
+
+        assertEquals(0, stone.getAmount());
+        assertNull(buffer.getContents()[0]);
+        assertEquals(64, buffer.getContents()[1].getAmount());
+        assertNull(buffer.getContents()[2]);
+        assertEquals(16, buffer.getContents()[3].getAmount());
+    }
+
+    @Test
+    public void testItemMetaIsCompared() {
+        ContainerInventory chest = container(Material.CHEST, InventoryType.CHEST, 27,
+                named(Material.STONE, 10, "Gold"), new ItemStack(Material.STONE, 10));
+        InventoryBuffer buffer = new InventoryBuffer(chest);
+
+        buffer.addItem(named(Material.STONE, 5, "Iron"));
+        buffer.addItem(named(Material.STONE, 5, "Gold"));
+        buffer.addItem(new ItemStack(Material.STONE, 5));
+        buffer.flush();
+
+        assertEquals(15, chest.getItem(0).getAmount());
+        assertEquals("Gold", chest.getItem(0).getItemMeta().getDisplayName());
+        assertEquals(15, chest.getItem(1).getAmount());
+        assertFalse(chest.getItem(1).hasItemMeta());
+        assertEquals(5, chest.getItem(2).getAmount());
+        assertEquals("Iron", chest.getItem(2).getItemMeta().getDisplayName());
+    }
+
+    @Test
+    public void testUsesEmptySlotsAndKeepsTheRest() {
+        ItemStack[] contents = new ItemStack[9];
+        for (int i = 0; i < 7; i++) {
+            contents[i] = new ItemStack(Material.DIRT, 64);
+        }
+        ContainerInventory dropper = container(Material.DROPPER, InventoryType.DROPPER, 9, contents);
+        InventoryBuffer buffer = new InventoryBuffer(dropper);
+
+        ItemStack pearls = new ItemStack(Material.ENDER_PEARL, 40);
+        buffer.addItem(pearls);
+
+        // ender pearls only stack to 16
+        assertEquals(8, pearls.getAmount());
+        assertEquals(Material.ENDER_PEARL, buffer.getContents()[7].getType());
+        assertEquals(16, buffer.getContents()[7].getAmount());
+        assertEquals(16, buffer.getContents()[8].getAmount());
+    }
+
+    @Test
+    public void testRespectsInventoryStackSize() {
+        ContainerInventory chest = container(Material.CHEST, InventoryType.CHEST, 27);
+        chest.setMaxStackSize(10);
+        InventoryBuffer buffer = new InventoryBuffer(chest);
+
+        ItemStack stone = new ItemStack(Material.STONE, 64);
+        buffer.addItem(stone);
+
+        assertEquals(0, stone.getAmount());
+        assertEquals(10, buffer.getContents()[0].getAmount());
+        assertEquals(4, buffer.getContents()[6].getAmount());
+    }
+
+    @Test
+    public void testFlushOnlyWritesChanges() {
+        ContainerInventory chest = container(Material.CHEST, InventoryType.CHEST, 27, new ItemStack(Material.STONE, 5));
+        InventoryBuffer buffer = new InventoryBuffer(chest);
+
+        buffer.flush();
+        assertEquals(0, chest.getWrites());
+
+        buffer.getContents()[0].setAmount(0);
+        buffer.addItem(new ItemStack(Material.DIRT, 3));
+        // nothing is written before the flush
+        assertEquals(Material.STONE, chest.getItem(0).getType());
+        buffer.flush();
+        assertEquals(1, chest.getWrites());
+        assertEquals(Material.DIRT, chest.getItem(0).getType());
+        assertEquals(3, chest.getItem(0).getAmount());
+        assertNull(chest.getItem(1));
+
+        buffer.flush();
+        assertEquals(1, chest.getWrites());
+
+        buffer.getContents()[0].setAmount(1);
+        buffer.flush();
+        assertEquals(2, chest.getWrites());
+        assertEquals(1, chest.getItem(0).getAmount());
+    }
+
+    @Test
+    public void testIsCurrent() {
+        ContainerInventory chest = container(Material.CHEST, InventoryType.CHEST, 27, new ItemStack(Material.STONE, 5));
+        InventoryBuffer buffer = new InventoryBuffer(chest);
+        assertTrue(buffer.isCurrent());
+
+        buffer.getContents()[0].setAmount(2);
+        buffer.flush();
+        assertTrue(buffer.isCurrent());
+
+        chest.setItem(0, named(Material.STONE, 2, "Gold"));
+        assertFalse(buffer.isCurrent());
+        chest.setItem(0, new ItemStack(Material.STONE, 2));
+        assertTrue(buffer.isCurrent());
+        chest.setItem(5, new ItemStack(Material.DIRT));
+        assertFalse(buffer.isCurrent());
+    }
+
+    @Test
+    public void testDiscardedBufferIsNotWritten() {
+        ContainerInventory chest = container(Material.CHEST, InventoryType.CHEST, 27, new ItemStack(Material.STONE, 5));
+        InventoryBuffer buffer = new InventoryBuffer(chest);
+
+        buffer.getContents()[0].setAmount(1);
+        chest.setItem(1, new ItemStack(Material.DIRT));
+        buffer.discard();
+        buffer.flush();
+
+        assertTrue(buffer.isDiscarded());
+        assertEquals(0, chest.getWrites());
+        assertEquals(5, chest.getItem(0).getAmount());
+        assertEquals(Material.DIRT, chest.getItem(1).getType());
+    }
+
+    @Test
+    public void testSupports() {
+        assertTrue(InventoryBuffer.supports(container(Material.CHEST, InventoryType.CHEST, 27)));
+        assertTrue(InventoryBuffer.supports(container(Material.DROPPER, InventoryType.DROPPER, 9)));
+        // MockBukkit only allows inventory sizes that are a multiple of 9
+        assertFalse(InventoryBuffer.supports(container(Material.FURNACE, InventoryType.FURNACE, 9)));
+        assertFalse(InventoryBuffer.supports(new ContainerInventory(null, InventoryType.CHEST, 27)));
+    }
+}
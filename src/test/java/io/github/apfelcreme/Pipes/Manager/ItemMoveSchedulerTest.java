@@ -0,0 +1,174 @@
+package io.github.apfelcreme.Pipes.Manager;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.ServerMock;
+import be.seeseemelk.mockbukkit.WorldMock;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.event.inventory.InventoryType;
+import org.bukkit.inventory.ItemStack;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+public class ItemMoveSchedulerTest {
+
+    private ServerMock server;
+    private WorldMock world;
+
+    private ContainerInventory input;
+    private ContainerInventory target;
+    private InventoryBuffer source;
+    private Map<Location, InventoryBuffer> buffers;
+
+    @BeforeEach
+    public void setUp() {
+        server = MockBukkit.mock();
+        world = server.addSimpleWorld("world");
+
+        input = container(0, new ItemStack(Material.STONE, 10));
+        target = container(2, new ItemStack(Material.DIRT, 1));
+        source = new InventoryBuffer(input);
+        buffers = new HashMap<>();
+        buffers.put(input.getLocation(), source);
+        buffers.put(target.getLocation(), new InventoryBuffer(target));
+
+        // an item is moved before the event is called
+        source.getContents()[0].setAmount(9);
+        buffers.get(target.getLocation()).addItem(new ItemStack(Material.DIRT, 1));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        HandlerList.unregisterAll();
+        MockBukkit.unmock();
+    }
+
+    private ContainerInventory container(int x, ItemStack... contents) {
+        Block block = world.getBlockAt(x, 64, 0);
+        block.setType(Material.CHEST);
+        return new ContainerInventory(block, InventoryType.CHEST, 27, contents);
+    }
+
+    private void listen(Consumer<TransferEvent> action) {
+        server.getPluginManager().registerEvents(new TransferListener(action), MockBukkit.createMockPlugin());
+    }
+
+    @Test
+    public void testBuffersAreKeptWithoutListeners() {
+        assertTrue(ItemMoveScheduler.callTransferEvent(new TransferEvent(), source, buffers, target));
+
+        // nothing was written, the changes are still buffered
+        assertEquals(0, input.getWrites());
+        assertEquals(0, target.getWrites());
+        assertEquals(10, input.getItem(0).getAmount());
+    }
+
+    @Test
+    public void testListenersSeeTheMovedItems() {
+        int[] seen = new int[2];
+        listen(event -> {
+            seen[0] = input.getItem(0).getAmount();
+            seen[1] = target.getItem(0).getAmount();
+        });
+
+        assertTrue(ItemMoveScheduler.callTransferEvent(new TransferEvent(), source, buffers, target));
+
+        assertEquals(9, seen[0]);
+        assertEquals(2, seen[1]);
+        assertFalse(source.isDiscarded());
+
+        // flushing again after the transfer doesn't write the same contents twice
+        source.flush();
+        buffers.get(target.getLocation()).flush();
+        assertEquals(1, input.getWrites());
+        assertEquals(1, target.getWrites());
+    }
+
+    @Test
+    public void testChangedInputDiscardsTheSource() {
+        listen(event -> input.setItem(0, new ItemStack(Material.STONE, 1)));
+
+        assertFalse(ItemMoveScheduler.callTransferEvent(new TransferEvent(), source, buffers, target));
+        assertTrue(source.isDiscarded());
+
+        // moving more items out of the discarded buffer doesn't overwrite the listener's change
+        source.getContents()[0].setAmount(0);
+        source.flush();
+        assertEquals(1, input.getItem(0).getAmount());
+    }
+
+    @Test
+    public void testChangedTargetIsReadAgain() {
+        InventoryBuffer targetBuffer = buffers.get(target.getLocation());
+        listen(event -> target.setItem(1, new ItemStack(Material.COBBLESTONE, 5)));
+
+        assertTrue(ItemMoveScheduler.callTransferEvent(new TransferEvent(), source, buffers, target));
+
+        InventoryBuffer reread = buffers.get(target.getLocation());
+        assertNotSame(targetBuffer, reread);
+        assertEquals(2, reread.getContents()[0].getAmount());
+        assertEquals(Material.COBBLESTONE, reread.getContents()[1].getType());
+        assertSame(source, buffers.get(input.getLocation()));
+        assertFalse(source.isDiscarded());
+    }
+
+    public static class TransferEvent extends Event {
+        private static final HandlerList handlers = new HandlerList();
+
+        @Override
+        public HandlerList getHandlers() {
+            return handlers;
+        }
+
+        public static HandlerList getHandlerList() {
+            return handlers;
+        }
+    }
+
+    public static class TransferListener implements Listener {
+        private final Consumer<TransferEvent> action;
+
+        private TransferListener(Consumer<TransferEvent> action) {
+            this.action = action;
+        }
+
+        @EventHandler
+        public void onTransfer(TransferEvent event) {
+            action.accept(event);
+        }
+    }
+}
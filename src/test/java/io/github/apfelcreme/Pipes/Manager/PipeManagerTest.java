@@ -0,0 +1,186 @@
+package io.github.apfelcreme.Pipes.Manager;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import com.google.common.cache.Cache;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import io.github.apfelcreme.Pipes.Pipe.Pipe;
+import io.github.apfelcreme.Pipes.Pipe.SimpleLocation;
+import org.bukkit.Material;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+public class PipeManagerTest {
+
+    @BeforeAll
+    public static void setUp() {
+        MockBukkit.mock();
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    private static SimpleLocation at(int x, int z) {
+        return new SimpleLocation("world", x, 64, z);
+    }
+
+    private static Set<SimpleLocation> line(int fromX, int toX) {
+        Set<SimpleLocation> blocks = new LinkedHashSet<>();
+        for (int x = fromX; x <= toX; x++) {
+            blocks.add(at(x, 0));
+        }
+        return blocks;
+    }
+
+    private static Pipe pipe(int blocks) {
+        return new Pipe(new LinkedHashMap<>(), new LinkedHashMap<>(), new LinkedHashMap<>(), new LinkedHashSet<>(line(0, blocks - 1)), Material.GLASS);
+    }
+
+    @Test
+    public void testSingleNeighbourIsNeverCutOff() {
+        Set<SimpleLocation> blocks = line(1, 5);
+        assertTrue(PipeManager.findCutOffComponents(blocks, List.of(at(1, 0))).isEmpty());
+    }
+
+    @Test
+    public void testSplitLine() {
+        Set<SimpleLocation> blocks = line(0, 1);
+        blocks.addAll(line(3, 10));
+
+        List<Set<SimpleLocation>> cutOff = PipeManager.findCutOffComponents(blocks, Arrays.asList(at(1, 0), at(3, 0)));
+
+        assertEquals(1, cutOff.size());
+        assertEquals(line(0, 1), cutOff.get(0));
+    }
+
+    @Test
+    public void testSplitLineOfEqualHalves() {
+        Set<SimpleLocation> blocks = line(0, 1);
+        blocks.addAll(line(3, 4));
+
+        List<Set<SimpleLocation>> cutOff = PipeManager.findCutOffComponents(blocks, Arrays.asList(at(1, 0), at(3, 0)));
+
+        // one half stays in the original pipe
+        assertEquals(1, cutOff.size());
+        assertEquals(2, cutOff.get(0).size());
+    }
+
+    @Test
+    public void testRingStaysConnected() {
+        // a ring around (1, 1) with (1, 0) removed
+        Set<SimpleLocation> blocks = new LinkedHashSet<>();
+        for (int x = 0; x <= 2; x++) {
+            for (int z = 0; z <= 2; z++) {
+                if ((x != 1 || z != 1) && (x != 1 || z != 0)) {
+                    blocks.add(at(x, z));
+                }
+            }
+        }
+
+        assertTrue(PipeManager.findCutOffComponents(blocks, Arrays.asList(at(0, 0), at(2, 0))).isEmpty());
+    }
+
+    @Test
+    public void testBranchAndShorterSideAreCutOff() {
+        // a long line with a short branch at x = 10, the block at (10, 0) was removed
+        Set<SimpleLocation> blocks = line(0, 9);
+        blocks.addAll(line(11, 30));
+        blocks.add(at(10, 1));
+        blocks.add(at(10, 2));
+
+        List<Set<SimpleLocation>> cutOff = PipeManager.findCutOffComponents(blocks, Arrays.asList(at(9, 0), at(11, 0), at(10, 1)));
+
+        Set<Integer> sizes = new HashSet<>();
+        List<SimpleLocation> found = new ArrayList<>();
+        for (Set<SimpleLocation> component : cutOff) {
+            sizes.add(component.size());
+            found.addAll(component);
+        }
+        assertEquals(new HashSet<>(Arrays.asList(2, 10)), sizes);
+        assertTrue(found.containsAll(line(0, 9)));
+        assertTrue(found.contains(at(10, 2)));
+        assertFalse(found.contains(at(30, 0)));
+    }
+
+    @Test
+    public void testIdlenessIsDecidedPerPipe() {
+        Pipe pipe = pipe(3);
+        List<RemovalNotification<SimpleLocation, Pipe>> removed = new ArrayList<>();
+        Cache<SimpleLocation, Pipe> cache = PipeManager.buildPipeCache(10, 0, removed::add);
+        cache.put(at(0, 1), pipe);
+        cache.put(at(0, 2), pipe);
+
+        // a lookup by any input keeps the whole pipe in use
+        pipe.setLastAccess(100);
+        assertFalse(PipeManager.isIdle(pipe, 100 + 10 * 20 - 1, 10));
+        assertTrue(PipeManager.isIdle(pipe, 100 + 10 * 20, 10));
+
+        // the entries don't expire on their own, idle pipes are removed as a whole
+        cache.cleanUp();
+        assertEquals(2, cache.size());
+        assertTrue(removed.isEmpty());
+    }
+
+    @Test
+    public void testWeightedEvictionUsesCachedWeight() {
+        List<RemovalNotification<SimpleLocation, Pipe>> removed = new ArrayList<>();
+        Cache<SimpleLocation, Pipe> cache = PipeManager.buildPipeCache(0, 10, removed::add);
+
+        Pipe first = pipe(6);
+        assertTrue(first.updateCacheWeight());
+        assertFalse(first.updateCacheWeight());
+        assertEquals(6, first.getCacheWeight());
+        cache.put(at(0, 1), first);
+
+        // the weight of an entry only changes when it is put again
+        Pipe second = pipe(3);
+        second.updateCacheWeight();
+        cache.put(at(0, 2), second);
+        second.getPipeBlocks().addAll(line(10, 11));
+        cache.cleanUp();
+        assertEquals(2, cache.size());
+        assertTrue(removed.isEmpty());
+
+        // the budget applies to the whole cache, the least recently used pipe gets evicted
+        assertTrue(second.updateCacheWeight());
+        cache.asMap().replace(at(0, 2), second);
+        cache.cleanUp();
+        assertEquals(1, cache.size());
+        assertSame(second, cache.getIfPresent(at(0, 2)));
+        assertTrue(removed.stream().anyMatch(n -> n.getCause() == RemovalCause.SIZE && n.getValue() == first));
+    }
+}
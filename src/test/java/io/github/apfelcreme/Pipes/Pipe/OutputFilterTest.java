@@ -0,0 +1,189 @@
+package io.github.apfelcreme.Pipes.Pipe;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import org.bukkit.Material;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.Damageable;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+public class OutputFilterTest {
+
+    @BeforeAll
+    public static void setUp() {
+        MockBukkit.mock();
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    private static ItemStack named(Material material, String name) {
+        ItemStack item = new ItemStack(material);
+        ItemMeta meta = item.getItemMeta();
+        meta.setDisplayName(name);
+        item.setItemMeta(meta);
+        return item;
+    }
+
+    private static ItemStack damaged(Material material, int damage) {
+        ItemStack item = new ItemStack(material);
+        Damageable meta = (Damageable) item.getItemMeta();
+        meta.setDamage(damage);
+        item.setItemMeta(meta);
+        return item;
+    }
+
+    private static OutputFilter materialFilter(ItemStack... contents) {
+        return OutputFilter.compile(true, true, false, false, false, false, contents);
+    }
+
+    @Test
+    public void testEmptyFilter() {
+        OutputFilter filter = materialFilter(null, null);
+        assertTrue(filter.isEmpty());
+        assertNull(filter.match(new ItemStack(Material.STONE)));
+    }
+
+    @Test
+    public void testMaterialFilter() {
+        ItemStack stone = new ItemStack(Material.STONE);
+        ItemStack dirt = new ItemStack(Material.DIRT);
+        OutputFilter filter = materialFilter(null, stone, dirt);
+
+        assertFalse(filter.isEmpty());
+        assertTrue(filter.isWhitelist());
+        assertSame(stone, filter.match(new ItemStack(Material.STONE, 64)));
+        assertSame(dirt, filter.match(new ItemStack(Material.DIRT)));
+        assertNull(filter.match(new ItemStack(Material.COBBLESTONE)));
+        assertNull(filter.match(null));
+    }
+
+    @Test
+    public void testFirstSlotWins() {
+        ItemStack first = new ItemStack(Material.STONE, 1);
+        ItemStack second = new ItemStack(Material.STONE, 32);
+        assertSame(first, materialFilter(first, second).match(new ItemStack(Material.STONE)));
+    }
+
+    @Test
+    public void testWithoutComparedAttributesEverythingMatches() {
+        ItemStack stone = new ItemStack(Material.STONE);
+        OutputFilter filter = OutputFilter.compile(false, false, false, false, false, false, new ItemStack[]{null, stone});
+
+        assertFalse(filter.isWhitelist());
+        assertSame(stone, filter.match(new ItemStack(Material.DIRT)));
+    }
+
+    @Test
+    public void testAllAttributesOfPlainItems() {
+        ItemStack stone = new ItemStack(Material.STONE);
+        OutputFilter filter = OutputFilter.compile(true, true, true, true, true, true, new ItemStack[]{stone});
+
+        assertSame(stone, filter.match(new ItemStack(Material.STONE, 10)));
+        assertNull(filter.match(new ItemStack(Material.DIRT)));
+    }
+
+    @Test
+    public void testMatchesSingleFilterItem() {
+        OutputFilter materials = materialFilter();
+        assertTrue(materials.matches(new ItemStack(Material.STONE), new ItemStack(Material.STONE, 5)));
+        assertFalse(materials.matches(new ItemStack(Material.STONE), new ItemStack(Material.DIRT)));
+        assertFalse(materials.matches(null, new ItemStack(Material.DIRT)));
+
+        OutputFilter nothing = OutputFilter.compile(true, false, false, false, false, false, new ItemStack[0]);
+        assertTrue(nothing.matches(new ItemStack(Material.STONE), new ItemStack(Material.DIRT)));
+    }
+
+    @Test
+    public void testDisplayFilter() {
+        ItemStack gold = named(Material.STONE, "Gold");
+        ItemStack plain = new ItemStack(Material.STONE);
+        OutputFilter filter = OutputFilter.compile(true, true, false, true, false, false, new ItemStack[]{gold, plain});
+
+        assertSame(gold, filter.match(named(Material.STONE, "Gold")));
+        assertSame(plain, filter.match(new ItemStack(Material.STONE, 3)));
+        assertNull(filter.match(named(Material.STONE, "Iron")));
+
+        ItemStack lore = named(Material.STONE, "Gold");
+        ItemMeta meta = lore.getItemMeta();
+        meta.setLore(Collections.singletonList("Shiny"));
+        lore.setItemMeta(meta);
+        assertNull(filter.match(lore));
+    }
+
+    @Test
+    public void testDamageFilter() {
+        ItemStack worn = damaged(Material.IRON_PICKAXE, 10);
+        OutputFilter filter = OutputFilter.compile(true, true, true, false, false, false, new ItemStack[]{worn});
+
+        assertSame(worn, filter.match(damaged(Material.IRON_PICKAXE, 10)));
+        assertNull(filter.match(damaged(Material.IRON_PICKAXE, 11)));
+        assertNull(filter.match(new ItemStack(Material.IRON_PICKAXE)));
+        // the name isn't compared without the display filter
+        ItemStack named = damaged(Material.IRON_PICKAXE, 10);
+        ItemMeta meta = named.getItemMeta();
+        meta.setDisplayName("Digger");
+        named.setItemMeta(meta);
+        assertSame(worn, filter.match(named));
+    }
+
+    @Test
+    public void testEnchantmentFilter() {
+        ItemStack sharp = new ItemStack(Material.IRON_SWORD);
+        sharp.addUnsafeEnchantment(Enchantment.DAMAGE_ALL, 1);
+        OutputFilter filter = OutputFilter.compile(true, false, false, false, true, false, new ItemStack[]{sharp});
+
+        ItemStack sameEnchantment = new ItemStack(Material.GOLDEN_SWORD);
+        sameEnchantment.addUnsafeEnchantment(Enchantment.DAMAGE_ALL, 1);
+        assertSame(sharp, filter.match(sameEnchantment));
+
+        ItemStack higherLevel = new ItemStack(Material.IRON_SWORD);
+        higherLevel.addUnsafeEnchantment(Enchantment.DAMAGE_ALL, 2);
+        assertNull(filter.match(higherLevel));
+        assertNull(filter.match(new ItemStack(Material.IRON_SWORD)));
+    }
+
+    @Test
+    public void testDataFilter() {
+        ItemStack gold = named(Material.STONE, "Gold");
+        ItemStack plain = new ItemStack(Material.DIRT);
+        OutputFilter filter = OutputFilter.compile(true, true, false, false, false, true, new ItemStack[]{gold, plain});
+
+        assertSame(gold, filter.match(named(Material.STONE, "Gold")));
+        assertNull(filter.match(new ItemStack(Material.STONE)));
+        assertSame(plain, filter.match(new ItemStack(Material.DIRT, 2)));
+        assertNull(filter.match(named(Material.DIRT, "Gold")));
+        assertTrue(filter.matches(gold, named(Material.STONE, "Gold")));
+        assertFalse(filter.matches(gold, named(Material.STONE, "Iron")));
+    }
+}
@@ -0,0 +1,178 @@
+package io.github.apfelcreme.Pipes.Pipe;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+public class PipeTest {
+
+    @BeforeAll
+    public static void setUp() {
+        MockBukkit.mock();
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    private static Pipe pipe(SimpleLocation... blocks) {
+        LinkedHashSet<SimpleLocation> pipeBlocks = new LinkedHashSet<>();
+        for (SimpleLocation block : blocks) {
+            pipeBlocks.add(block);
+        }
+        return new Pipe(new LinkedHashMap<>(), new LinkedHashMap<>(), new LinkedHashMap<>(), pipeBlocks, Material.GLASS);
+    }
+
+    @Test
+    public void testRouteIsCachedPerItem() {
+        Pipe pipe = pipe();
+        Route route = pipe.getRoute(new ItemStack(Material.STONE, 10));
+        assertTrue(route.isCacheable());
+        assertEquals(0, route.size());
+        assertEquals(new ItemStack(Material.STONE), route.getKey());
+        // the amount isn't part of the key
+        assertSame(route, pipe.getRoute(new ItemStack(Material.STONE, 1)));
+        assertNotSame(route, pipe.getRoute(new ItemStack(Material.DIRT)));
+        assertSame(route, pipe.getRoute(new ItemStack(Material.STONE, 64)));
+
+        // items with meta get their own route
+        ItemStack named = new ItemStack(Material.STONE);
+        ItemMeta meta = named.getItemMeta();
+        meta.setDisplayName("Gold");
+        named.setItemMeta(meta);
+        Route namedRoute = pipe.getRoute(named);
+        assertNotSame(route, namedRoute);
+        assertSame(namedRoute, pipe.getRoute(named.clone()));
+    }
+
+    @Test
+    public void testRoutesAreRebuiltAfterLayoutChanges() {
+        Pipe pipe = pipe();
+        Route route = pipe.getRoute(new ItemStack(Material.STONE));
+        pipe.markChanged();
+        assertNotSame(route, pipe.getRoute(new ItemStack(Material.STONE)));
+    }
+
+    @Test
+    public void testRoutesAreRebuiltAfterFilterChanges() {
+        Pipe pipe = pipe();
+        Route route = pipe.getRoute(new ItemStack(Material.STONE));
+        OutputFilter.nextGeneration();
+        Route rebuilt = pipe.getRoute(new ItemStack(Material.STONE));
+        assertNotSame(route, rebuilt);
+        assertSame(rebuilt, pipe.getRoute(new ItemStack(Material.STONE)));
+    }
+
+    @Test
+    public void testTokenBucketStartsFull() {
+        Pipe pipe = pipe();
+        assertEquals(8, pipe.refillTokens(100, 0.5, 8));
+        assertEquals(0, pipe.getTicksUntilToken(0.5));
+    }
+
+    @Test
+    public void testTokenBucketRefillsUpToBurst() {
+        Pipe pipe = pipe();
+        pipe.refillTokens(100, 0.5, 8);
+        pipe.takeTokens(8);
+        assertEquals(0, pipe.getTokens());
+        assertEquals(2, pipe.getTicksUntilToken(0.5));
+
+        // no refill within the same tick
+        assertEquals(0, pipe.refillTokens(100, 0.5, 8));
+        assertEquals(1.5, pipe.refillTokens(103, 0.5, 8));
+        assertEquals(0, pipe.getTicksUntilToken(0.5));
+        assertEquals(8, pipe.refillTokens(1000, 0.5, 8));
+    }
+
+    @Test
+    public void testTokenBucketDebt() {
+        Pipe pipe = pipe();
+        pipe.refillTokens(0, 0.25, 1);
+        // taking more than there is leaves a debt that has to be refilled first
+        pipe.takeTokens(2);
+        assertEquals(-1, pipe.getTokens());
+        assertEquals(8, pipe.getTicksUntilToken(0.25));
+        assertEquals(0.5, pipe.refillTokens(6, 0.25, 1));
+        assertEquals(2, pipe.getTicksUntilToken(0.25));
+    }
+
+    @Test
+    public void testAbsorbMovesBlocks() {
+        SimpleLocation first = new SimpleLocation("world", 0, 64, 0);
+        SimpleLocation second = new SimpleLocation("world", 1, 64, 0);
+        Pipe pipe = pipe(first);
+        Pipe other = pipe(second);
+        pipe.setLastAccess(10);
+        other.setLastAccess(20);
+        int version = pipe.getTopologyVersion();
+
+        pipe.absorb(other);
+
+        assertEquals(new LinkedHashSet<>(Arrays.asList(first, second)), pipe.getPipeBlocks());
+        assertTrue(other.getPipeBlocks().isEmpty());
+        assertEquals(20, pipe.getLastAccess());
+        assertNotEquals(version, pipe.getTopologyVersion());
+        assertFalse(pipe.isMerged());
+        assertTrue(other.isMerged());
+        assertSame(pipe, other.resolve());
+        assertSame(pipe, pipe.resolve());
+    }
+
+    @Test
+    public void testResolveFollowsChains() {
+        Pipe first = pipe();
+        Pipe second = pipe();
+        Pipe third = pipe();
+        Pipe fourth = pipe();
+
+        second.absorb(first);
+        third.absorb(second);
+        fourth.absorb(third);
+
+        assertSame(fourth, first.resolve());
+        assertSame(fourth, second.resolve());
+        assertSame(fourth, third.resolve());
+        // the path got shortened, resolving again gives the same result
+        assertSame(fourth, first.resolve());
+
+        Pipe fifth = pipe();
+        fifth.absorb(fourth);
+        assertSame(fifth, first.resolve());
+        assertSame(fifth, third.resolve());
+    }
+}
@@ -0,0 +1,61 @@
+package io.github.apfelcreme.Pipes.Pipe;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/*
+ * Copyright (C) 2016 Lord36 aka Apfelcreme
+ * <p>
+ * This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 3
+ * of the License, or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ * @author Lord36 aka Apfelcreme
+ */
+public class SimpleLocationTest {
+
+    private static final int[] COORDINATES = {0, 1, -1, 15, 16, -16, -17, 12345, -12345, 29999999, -29999999};
+    private static final int[] HEIGHTS = {0, 1, -1, -64, 319, 2047, -2048};
+
+    @Test
+    public void testPackRoundTrip() {
+        for (int x : COORDINATES) {
+            for (int y : HEIGHTS) {
+                for (int z : COORDINATES) {
+                    SimpleLocation location = new SimpleLocation("world", x, y, z);
+                    assertEquals(location, SimpleLocation.unpack("world", location.getKey()));
+                    assertEquals(SimpleLocation.pack(x, y, z), location.getKey());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testNeighboursHaveDifferentKeys() {
+        assertNotEquals(SimpleLocation.pack(0, 0, 0), SimpleLocation.pack(-1, 0, 0));
+        assertNotEquals(SimpleLocation.pack(0, 0, 0), SimpleLocation.pack(0, -1, 0));
+        assertNotEquals(SimpleLocation.pack(0, 0, 0), SimpleLocation.pack(0, 0, -1));
+        assertNotEquals(SimpleLocation.pack(0, -1, 0), SimpleLocation.pack(0, 0, -1));
+    }
+
+    @Test
+    public void testChunkKey() {
+        assertEquals(SimpleLocation.chunkKey(0, 0), new SimpleLocation("world", 15, 64, 15).getChunkKey());
+        assertEquals(SimpleLocation.chunkKey(-1, -1), new SimpleLocation("world", -1, 64, -16).getChunkKey());
+        assertEquals(SimpleLocation.chunkKey(-2, 1), new SimpleLocation("world", -17, 64, 16).getChunkKey());
+        long key = SimpleLocation.chunkKey(-5, 7);
+        assertEquals(-5, (int) key);
+        assertEquals(7, (int) (key >> 32));
+    }
+}